@@ -2,12 +2,15 @@ package lindenmayer;
 
 import java.awt.geom.*;
 import java.io.*;
+import java.nio.file.Path;
 import org.json.*;
 
-import lindenmayer.FakeTurtle;
+import lindenmayer.EpsWriter;
 import lindenmayer.LSystem;
 import lindenmayer.PostScriptTurtle;
-import lindenmayer.Turtle;
+import lindenmayer.RecordingTurtle;
+import lindenmayer.SegmentSource;
+import lindenmayer.SegmentStore;
 
 public class Main {
     public static void main(String[] args) throws Exception {
@@ -19,50 +22,98 @@ public class Main {
         int n = Integer.parseInt(args[1]);
         JSONObject spec = new JSONObject(new JSONTokener(new FileReader(jsonFile)));
 
-        // 1) Passe muette pour calculer le BoundingBox
-        LSystem sysBBox = new LSystem();
-        FakeTurtle dummy = new FakeTurtle(new Point2D.Double(0, 0), 90);
-        sysBBox.initFromJson(spec, dummy);
-        Rectangle2D bbox = sysBBox.tell(dummy, sysBBox.getAxiom(), n);
+        // Tracés gardés sur disque (-Dlindenmayer.cache=<répertoire>, taille
+        // bornée par -Dlindenmayer.cache.max=<octets>) : rejoués sans réécriture
+        String cacheDir = System.getProperty("lindenmayer.cache");
+        SegmentStore store = cacheDir == null ? null
+                : new SegmentStore(Path.of(cacheDir), Long.getLong("lindenmayer.cache.max", SegmentStore.LIMIT));
 
-        // 2) Passe dessin EPS
-        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"))) {
-            // En-tête EPS
-            out.println("%!PS-Adobe-3.0 EPSF-3.0");
-            out.printf("%%%%Title: (%s)%n", new File(jsonFile).getName());
-            out.println("%%Creator: (IFT2015 - Projet 1)");
-            //out.printf("%%%%BoundingBox: %d %d %d %d%n",
-            //        (int) bbox.getMinX(), (int) bbox.getMinY(),
-            //        (int) bbox.getMaxX(), (int) bbox.getMaxY());
-            //out.println("%%EndComments");
+        // Sortie EPS : formatage direct en octets, vidé par blocs dans stdout
+        try (EpsWriter out = new EpsWriter(new FileOutputStream(FileDescriptor.out).getChannel())) {
+            render(spec, new File(jsonFile).getName(), n, store, out);
+        }
+    }
 
-            // Calcul de translation pour mettre le bbox à l'origine (ou centré)
-            double transX = Math.abs(bbox.getMaxX() + bbox.getMinX())/2 + 306;
-            double transY = -bbox.getMinY();
-            out.printf("%.3f %.3f translate\n", transX, transY);
+    /**
+     * Écrit le fichier EPS de la génération n.
+     *
+     * @param store tracés gardés sur disque, ou null
+     */
+    static void render(JSONObject spec, String title, int n, SegmentStore store, EpsWriter out)
+            throws IOException {
+        // 1) BoundingBox analytique si la grammaire s'y prête (rien à dessiner
+        //    d'avance) ; sinon une seule expansion, enregistrée pour le rejeu
+        LSystem sys = new LSystem();
+        sys.setParallel(true); // expansion enregistrée : branches en parallèle
+        sys.setCounterBased(true); // choix de règles par chemin : herbe aussi en parallèle
+        RecordingTurtle recorder = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        recorder.setFused(true); // suites de terminaux posées d'un bloc
+        sys.initFromJson(spec, recorder);
 
-            // (optionnel) Scaling pour ajuster la taille à, par exemple, 500x500
-            double width  = bbox.getMaxX() - bbox.getMinX();
-            double height = bbox.getMaxY() - bbox.getMinY();
-            double scaleX  = 1.0; // ex: 500.0 / Math.max(width, height)
-            double scaleY = 1.0;
-            if (width > 0 && height > 0) {
-                // Mettre l'arbre à échelle de 500x500
-                scaleX = 612.0 / (Math.abs(bbox.getMinX() - bbox.getMaxX()));
-                scaleY = 792.0 / Math.abs(bbox.getMinY() - bbox.getMaxY());
-                out.printf("%.3f %.3f scale\n", scaleX, scaleY);
+        // Tracé gardé sur disque, si les choix de règles se reproduisent d'un
+        // lancement à l'autre ; sinon enregistré, puis gardé pour la fois suivante
+        String key = store == null ? null : SegmentStore.key(sys, spec, n);
+        SegmentStore.Segments stored = key == null ? null : store.get(key);
+        Rectangle2D bbox;
+        SegmentSource segments = null;
+        if (stored != null && stored.bounds() != null) {
+            bbox = stored.bounds();
+            segments = stored;
+        } else {
+            bbox = key == null ? sys.boundingBox(recorder, n) : null; // à garder : enregistré
+            if (bbox == null) {
+                bbox = sys.tell(recorder, sys.getAxiom(), n);
+                segments = recorder.segments();
+                if (key != null)
+                    store.put(key, segments, bbox);
             }
+        }
+
+        // 2) Sortie EPS : en-tête
+        out.text("%!PS-Adobe-3.0 EPSF-3.0").newline();
+        out.text("%%Title: (" + title + ")").newline();
+        out.text("%%Creator: (IFT2015 - Projet 1)").newline();
+        //out.printf("%%%%BoundingBox: %d %d %d %d%n",
+        //        (int) bbox.getMinX(), (int) bbox.getMinY(),
+        //        (int) bbox.getMaxX(), (int) bbox.getMaxY());
+        //out.println("%%EndComments");
 
-            // Système pour dessin
-            LSystem sysDraw = new LSystem();
-            Turtle turtle = new PostScriptTurtle(new Point2D.Double(0, 0), 90, out);
-            sysDraw.initFromJson(spec, turtle);
-            sysDraw.tell(turtle, sysDraw.getAxiom(), n);
+        // Calcul de translation pour mettre le bbox à l'origine (ou centré)
+        double transX = Math.abs(bbox.getMaxX() + bbox.getMinX())/2 + 306;
+        double transY = 0.0 - bbox.getMinY(); // jamais -0.0 (« -0.000 » en sortie)
+        out.number(transX).space().number(transY).text(" translate\n");
 
-            out.println("stroke");
-            out.println("%%Trailer");
-            out.println("%%BoundingBox: 97 0 320 341");
-            out.println("%%EOF");
+        // (optionnel) Scaling pour ajuster la taille à, par exemple, 500x500
+        double width  = bbox.getMaxX() - bbox.getMinX();
+        double height = bbox.getMaxY() - bbox.getMinY();
+        double scaleX  = 1.0; // ex: 500.0 / Math.max(width, height)
+        double scaleY = 1.0;
+        if (width > 0 && height > 0) {
+            // Mettre l'arbre à échelle de 500x500
+            scaleX = 612.0 / (Math.abs(bbox.getMinX() - bbox.getMaxX()));
+            scaleY = 792.0 / Math.abs(bbox.getMinY() - bbox.getMaxY());
+            out.number(scaleX).space().number(scaleY).text(" scale\n");
         }
+
+        PostScriptTurtle turtle = new PostScriptTurtle(new Point2D.Double(0, 0), 90, out);
+        turtle.setCompact(true); // traits colinéaires fusionnés, rlineto, peu de strokes
+        if (segments != null) {
+            // Rejeu du tracé enregistré, sans nouvelle réécriture
+            turtle.replay(segments); // formaté par morceaux, en parallèle
+        } else {
+            // Dessin direct : même état de départ que la tortue d'analyse
+            turtle.setUnits(recorder.getUnitStep(), recorder.getUnitAngle());
+            turtle.init(recorder.getPosition(), recorder.getAngle());
+            // expansion sur un autre fil, écriture sur celui-ci : seulement si
+            // un autre cœur peut la prendre, sinon les deux fils se relaient
+            sys.setPipelined(Runtime.getRuntime().availableProcessors() > 1);
+            sys.tell(turtle, sys.getAxiom(), n);
+        }
+
+        turtle.flush();
+        out.text("stroke").newline();
+        out.text("%%Trailer").newline();
+        out.text("%%BoundingBox: 97 0 320 341").newline();
+        out.text("%%EOF").newline();
     }
 }
\ No newline at end of file
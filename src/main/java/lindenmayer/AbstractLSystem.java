@@ -72,6 +72,23 @@ public abstract class AbstractLSystem
      */
     private long seed;
     
+    /**
+     * Counter-based mode, see {@link #setCounterBased(boolean)}.
+     */
+    private boolean counterBased;
+    
+    /**
+     * State of the non-atomic sequential generator used in counter-based mode.
+     */
+    private long counter;
+    
+    /**
+     * Key of the (virtual) root of every derivation, see {@link #childKey(long, int)}.
+     */
+    static final long ROOT_KEY = 0L;
+    
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    
     
     /*
      * Instantiation and reinitialization.
@@ -93,6 +110,7 @@ public abstract class AbstractLSystem
     {
         this.seed = seed;
         this.rnd = new Random(seed);
+        this.counter = seed;
     }
     
     /**
@@ -101,19 +119,91 @@ public abstract class AbstractLSystem
      */
     protected void resetRnd(){
         this.rnd.setSeed(seed);
+        this.counter = seed;
     }
     
     /**
      * Random integer between uniformly distributed between 
      * 0 (inclusive) and <var>n</var> (exclusive)
      * 
+     * In counter-based mode, the values come from a non-atomic SplitMix64 
+     * sequence instead of {@link #rnd}.
+     * 
      * @param n
      * @return integer 0..<var>n</var>-1
      */
     protected final int rndInt(int n) {
+    	if (counterBased) {
+    		counter += GOLDEN_GAMMA;
+    		return bounded(mix(counter), n);
+    	}
     	return rnd.nextInt(n);
     }
     
+    /**
+     * Position-addressable random integer, uniformly distributed between 
+     * 0 (inclusive) and <var>n</var> (exclusive). The value is a pure 
+     * function of the seed, the key and the depth: it does not depend on 
+     * the order of the calls, nor on the thread making them.
+     * 
+     * @param key derivation path of the node, built with {@link #childKey(long, int)}
+     * @param depth number of remaining rewriting rounds at the node
+     * @param n
+     * @return integer 0..<var>n</var>-1
+     */
+    protected final int rndInt(long key, int depth, int n) {
+    	return bounded(mix(seed ^ mix(key + depth)), n);
+    }
+    
+    /**
+     * Key of the <var>index</var>-th child of a node in the derivation tree; 
+     * the symbols of the starting sequence are the children of {@link #ROOT_KEY}.
+     * 
+     * @param parent key of the parent node
+     * @param index position of the child in the parent's expansion 
+     * @return key of the child
+     */
+    static long childKey(long parent, int index) {
+    	return mix(parent + (index + 1L) * GOLDEN_GAMMA);
+    }
+    
+    /**
+     * Selects the counter-based random mode. Rule choices in 
+     * {@link #tell(Turtle, Iterator, int)} are then keyed by 
+     * (seed, derivation path, depth) instead of drawn sequentially, 
+     * so that any subtree can be expanded on its own -- lazily, out of order 
+     * or in parallel -- and still make the same choices. 
+     * {@link #resetRnd()}, {@link #rndInt(int)} and {@link #rndElement(List)}
+     * keep working, with a non-atomic generator.
+     * 
+     * @param counterBased true for counter-based choices, false for {@link #rnd}
+     */
+    public final void setCounterBased(boolean counterBased) {
+    	this.counterBased = counterBased;
+    }
+    
+    /**
+     * Whether the counter-based random mode is selected.
+     * @return true if rule choices are keyed by derivation path
+     */
+    public final boolean isCounterBased() {
+    	return counterBased;
+    }
+    
+    /** SplitMix64 finalizer. */
+    private static long mix(long z) {
+    	z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    	z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    	return z ^ (z >>> 31);
+    }
+    
+    /** Maps 64 random bits to 0..<var>n</var>-1 (multiply-shift). */
+    private static int bounded(long bits, int n) {
+    	if (n <= 0)
+    		throw new IllegalArgumentException("bound must be positive");
+    	return (int) (((bits >>> 32) * n) >>> 32);
+    }
+    
     /**
      * Sets the random seed
      * 
@@ -217,15 +307,15 @@ public abstract class AbstractLSystem
      */
     public abstract void tell(Turtle turtle, Symbol sym );
 
-//    /**
-//     * Calculates the result of multiple rounds of rewriting. Symbols with no reriting rules are simply copied 
-//     * at each round. 
-//     * 
-//     * @param seq starting sequence
-//     * @param n number of rounds
-//     * @return sequence obtained after rewriting the entire sequence <var>n</var> times 
-//     */
-//    public abstract Iterator<Symbol> applyRules(Iterator<Symbol> seq, int n);
+    /**
+     * Calculates the result of multiple rounds of rewriting. Symbols with no reriting rules are simply copied 
+     * at each round. 
+     * 
+     * @param seq starting sequence
+     * @param n number of rounds
+     * @return sequence obtained after rewriting the entire sequence <var>n</var> times 
+     */
+    public abstract Iterator<Symbol> applyRules(Iterator<Symbol> seq, int n);
     
     /**
      * Draws the result after multiple rounds of rewriting, starting from an 
@@ -0,0 +1,221 @@
+package lindenmayer;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Bounding-box d'une grammaire déterministe calculé sans dessiner.
+ *
+ * <p>Quand l'angle unitaire divise 360, l'orientation de la tortue ne prend
+ * que {@code H = 360/angle} valeurs : on la représente par un indice
+ * modulo H. Pour chaque triplet (symbole, niveau, orientation) on mémorise
+ * le résumé du sous-arbre : déplacement net, rotation nette et bounding-box
+ * local (relatif au point de départ). Le résumé d'un non-terminal se compose
+ * à partir de ceux de son membre droit au niveau inférieur ; les crochets
+ * (push/pop) sont résolus par une pile locale et doivent être équilibrés
+ * dans chaque membre droit. Le coût total est
+ * O(|alphabet| · n · H · |membre droit|), au lieu d'être exponentiel en n.
+ *
+ * <p>Les résumés d'un couple (symbole, niveau) sont alloués à la première
+ * visite, pour les H orientations à la fois ; au-delà de {@link #BUDGET}
+ * octets, le calcul abandonne et l'appelant développe la grammaire.
+ */
+final class AnalyticBounds {
+    /** Mémoire des résumés, en octets. */
+    static final long BUDGET = 8L << 20;
+    /** Octets d'un résumé : état, six doubles, rotation. */
+    private static final int ENTRY_BYTES = 1 + 6 * Double.BYTES + Integer.BYTES;
+
+    private final Grammar g;
+    private final int headings;
+    /** orientation -> pas unitaire (dx, dy) */
+    private final double[] dirX, dirY;
+
+    /* par (niveau, symbole), null tant que non visité ; puis par orientation */
+    /** 0 : à calculer, 1 : valide, 2 : non résumable (crochets) */
+    private final byte[][] state;
+    /** dx, dy, minX, minY, maxX, maxY */
+    private final double[][] sum;
+    /** rotation nette en unités d'angle, modulo H */
+    private final int[][] rot;
+    /** octets alloués */
+    private long used;
+    /** vrai dès qu'une ligne a été refusée faute de budget */
+    private boolean exhausted;
+
+    private AnalyticBounds(Grammar g, int headings, double[] dirX, double[] dirY, int rows) {
+        this.g = g;
+        this.headings = headings;
+        this.dirX = dirX;
+        this.dirY = dirY;
+        this.state = new byte[rows][];
+        this.sum = new double[rows][];
+        this.rot = new int[rows][];
+        this.used = 3L * Long.BYTES * rows;
+    }
+
+    /**
+     * Prépare le calcul pour n réécritures.
+     *
+     * @param step pas unitaire
+     * @param startAngle orientation de départ en degrés
+     * @param unitAngle angle unitaire en degrés
+     * @return null si la grammaire est aléatoire, si l'angle unitaire ne
+     *         divise pas 360, ou si les résumés d'un seul symbole dépassent
+     *         {@link #BUDGET}
+     */
+    static AnalyticBounds of(Grammar g, double step, double startAngle, double unitAngle, int n) {
+        if (!g.deterministic || unitAngle == 0)
+            return null;
+        double exact = 360.0 / Math.abs(unitAngle);
+        int headings = (int) Math.round(exact);
+        if (headings <= 0 || Math.abs(exact - headings) > 1e-9)
+            return null;
+        long rows = (long) (n + 1) * g.size();
+        if (3 * Long.BYTES * rows + (long) headings * ENTRY_BYTES > BUDGET)
+            return null;
+
+        double[] dirX = new double[headings];
+        double[] dirY = new double[headings];
+        for (int h = 0; h < headings; ++h) {
+            double rad = Math.toRadians(startAngle + h * unitAngle);
+            dirX[h] = step * Math.cos(rad);
+            dirY[h] = step * Math.sin(rad);
+        }
+        return new AnalyticBounds(g, headings, dirX, dirY, (int) rows);
+    }
+
+    /**
+     * Bounding-box du tracé d'une séquence après n réécritures, départ inclus.
+     *
+     * @return null si les crochets ne se résolvent pas localement, ou si
+     *         les résumés nécessaires dépassent {@link #BUDGET}
+     */
+    Rectangle2D bounds(int[] seq, double x, double y, int n) {
+        Walk w = new Walk(x, y, 0);
+        for (int id : seq) {
+            if (!step(w, id, n))
+                return null;
+        }
+        return new Rectangle2D.Double(w.minX, w.minY, w.maxX - w.minX, w.maxY - w.minY);
+    }
+
+    /** Applique un symbole de niveau {@code level} à l'état courant. */
+    private boolean step(Walk w, int id, int level) {
+        if (level == 0 || g.altCount[id] == 0) {
+            switch (g.op[id]) {
+                case TurtleOp.DRAW, TurtleOp.MOVE -> {
+                    w.x += dirX[w.h];
+                    w.y += dirY[w.h];
+                    w.include(w.x, w.y);
+                }
+                case TurtleOp.TURN_L -> w.h = (w.h + 1) % headings;
+                case TurtleOp.TURN_R -> w.h = (w.h + headings - 1) % headings;
+                case TurtleOp.PUSH -> w.push();
+                case TurtleOp.POP -> {
+                    return w.pop();
+                }
+                default -> {
+                } // stay, ou symbole sans action
+            }
+            return true;
+        }
+        int r = row(id, level), h = w.h;
+        if (r < 0 || !summarize(r, id, level, h))
+            return false;
+        double[] sum = this.sum[r];
+        w.include(w.x + sum[6 * h + 2], w.y + sum[6 * h + 3]);
+        w.include(w.x + sum[6 * h + 4], w.y + sum[6 * h + 5]);
+        w.x += sum[6 * h];
+        w.y += sum[6 * h + 1];
+        w.h = (h + rot[r][h]) % headings;
+        return true;
+    }
+
+    /** Ligne des résumés de (s, level), allouée au besoin ; -1 hors budget. */
+    private int row(int s, int level) {
+        int r = level * g.size() + s;
+        if (state[r] == null) {
+            long bytes = (long) headings * ENTRY_BYTES;
+            if (used + bytes > BUDGET) {
+                exhausted = true;
+                return -1;
+            }
+            used += bytes;
+            state[r] = new byte[headings];
+            sum[r] = new double[6 * headings];
+            rot[r] = new int[headings];
+        }
+        return r;
+    }
+
+    /** Calcule au besoin le résumé de (s, level, h) ; faux s'il n'existe pas. */
+    private boolean summarize(int r, int s, int level, int h) {
+        if (state[r][h] == 0) {
+            Walk w = new Walk(0, 0, h);
+            int a = g.altStart[s];
+            boolean ok = true;
+            for (int i = g.rhsStart[a]; ok && i < g.rhsStart[a + 1]; ++i)
+                ok = step(w, g.rhs[i], level - 1);
+            if (exhausted)
+                return false; // faute de mémoire, pas de crochets : rien de retenu
+            if (ok && w.depth == 0) {
+                double[] sum = this.sum[r];
+                sum[6 * h] = w.x;
+                sum[6 * h + 1] = w.y;
+                sum[6 * h + 2] = w.minX;
+                sum[6 * h + 3] = w.minY;
+                sum[6 * h + 4] = w.maxX;
+                sum[6 * h + 5] = w.maxY;
+                rot[r][h] = (w.h - h + headings) % headings;
+                state[r][h] = 1;
+            } else {
+                state[r][h] = 2;
+            }
+        }
+        return state[r][h] == 1;
+    }
+
+    /** État de la composition : position, orientation, bbox et pile locale. */
+    private static final class Walk {
+        double x, y;
+        int h;
+        double minX, minY, maxX, maxY;
+        double[] stack = new double[3 * 8];
+        int depth;
+
+        Walk(double x, double y, int h) {
+            this.x = x;
+            this.y = y;
+            this.h = h;
+            minX = maxX = x;
+            minY = maxY = y;
+        }
+
+        void include(double px, double py) {
+            if (px < minX) minX = px;
+            if (px > maxX) maxX = px;
+            if (py < minY) minY = py;
+            if (py > maxY) maxY = py;
+        }
+
+        void push() {
+            if (3 * depth + 3 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            stack[3 * depth] = x;
+            stack[3 * depth + 1] = y;
+            stack[3 * depth + 2] = h;
+            ++depth;
+        }
+
+        boolean pop() {
+            if (depth == 0)
+                return false; // le pop remonte hors du sous-arbre
+            --depth;
+            x = stack[3 * depth];
+            y = stack[3 * depth + 1];
+            h = (int) stack[3 * depth + 2];
+            return true;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package lindenmayer;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Expansion fork/join des branches entre crochets.
+ *
+ * <p>Une paire push ... pop d'un membre droit délimite une sous-dérivation
+ * indépendante : elle part de l'état courant de la tortue et le rend intact.
+ * Une branche assez grosse est confiée à une tâche qui l'enregistre dans son
+ * propre {@link SegmentBuffer}, à partir du même état ; pendant ce temps, la
+ * tâche parente saute la branche et continue dans un nouveau tampon. Les
+ * tampons sont recollés dans l'ordre séquentiel : le tracé est identique,
+ * segment par segment, à celui d'une expansion séquentielle.
+ *
+ * <p>Conditions ({@link #supports(Grammar)}) : symboles push/pop sans règle,
+ * et crochets équilibrés dans chaque membre droit (sinon une branche
+ * pourrait dépiler un état extérieur). Les choix de règles doivent en plus
+ * être indépendants de l'ordre de parcours : grammaire déterministe, ou
+ * mode compteur, où chaque nœud porte la clé de son chemin.
+ */
+@SuppressWarnings("serial") // sérialisable par héritage seulement : jamais sérialisée
+final class BranchTask extends RecursiveTask<List<SegmentBuffer>> {
+    /** Travail minimal (symboles exécutés) d'une branche confiée à une tâche. */
+    static final long MIN_FORK_WORK = 1 << 12;
+
+    private final Shared sh;
+    private final int[] seq;
+    private final int from, to, level;
+    /** clé du nœud parent de la tranche, et début de son membre droit */
+    private final long key;
+    private final int base;
+    private final RecordingTurtle turtle;
+
+    private BranchTask(Shared sh, int[] seq, int from, int to, int level,
+            long key, int base, RecordingTurtle turtle) {
+        this.sh = sh;
+        this.seq = seq;
+        this.from = from;
+        this.to = to;
+        this.level = level;
+        this.key = key;
+        this.base = base;
+        this.turtle = turtle;
+    }
+
+    /**
+     * Vrai si la grammaire se prête au découpage par branches (le caractère
+     * déterministe ou non est vérifié par l'appelant).
+     */
+    static boolean supports(Grammar g) {
+        return g.bracketsBalanced();
+    }
+
+    /**
+     * Développe {@code seq} après n réécritures sur la tortue, en parallèle.
+     * Les segments s'ajoutent au tampon de la tortue dans l'ordre séquentiel,
+     * et la tortue finit dans le même état qu'après une expansion séquentielle.
+     *
+     * @param sys L-système en mode compteur qui choisit les règles ; null si
+     *            la grammaire est déterministe
+     * @param box {minX, minY, maxX, maxY}, élargi aux extrémités des segments
+     */
+    static void tell(Grammar g, AbstractLSystem sys, RecordingTurtle turtle, int[] seq, int n, double[] box) {
+        Shared sh = new Shared(g, sys, turtle.getUnitStep(), turtle.getUnitAngle(), n);
+        SegmentBuffer original = turtle.redirect(new SegmentBuffer(16));
+        List<SegmentBuffer> pieces = ForkJoinPool.commonPool()
+                .invoke(new BranchTask(sh, seq, 0, seq.length, n, AbstractLSystem.ROOT_KEY, 0, turtle));
+        turtle.redirect(original);
+        for (SegmentBuffer piece : pieces) {
+            original.append(piece);
+            Rectangle2D r = piece.getBounds();
+            if (r != null) {
+                box[0] = Math.min(box[0], r.getMinX());
+                box[1] = Math.min(box[1], r.getMinY());
+                box[2] = Math.max(box[2], r.getMaxX());
+                box[3] = Math.max(box[3], r.getMaxY());
+            }
+        }
+    }
+
+    @Override
+    protected List<SegmentBuffer> compute() {
+        List<Object> parts = new ArrayList<>(); // SegmentBuffer ou BranchTask, dans l'ordre
+        walk(new Expander(sh.g, sh.sys), seq, from, to, level, key, base, parts);
+        parts.add(turtle.segments());
+
+        List<SegmentBuffer> pieces = new ArrayList<>(parts.size());
+        for (Object part : parts) {
+            if (part instanceof BranchTask task)
+                pieces.addAll(task.join());
+            else if (((SegmentBuffer) part).size() > 0)
+                pieces.add((SegmentBuffer) part);
+        }
+        return pieces;
+    }
+
+    /**
+     * Parcourt la tranche {@code seq[from..to-1]} de niveau {@code level} :
+     * descend dans les gros non-terminaux pour y chercher des branches,
+     * confie les grosses branches à des sous-tâches et développe le reste
+     * séquentiellement. Le symbole en {@code i} a pour clé
+     * childKey(parent, i - base).
+     */
+    private void walk(Expander expander, int[] seq, int from, int to, int level,
+            long parent, int base, List<Object> parts) {
+        Grammar g = sh.g;
+        for (int i = from; i < to; ++i) {
+            int id = seq[i];
+            if (level > 0 && g.altCount[id] > 0) {
+                long k = AbstractLSystem.childKey(parent, i - base);
+                if (sh.work(id, level) >= MIN_FORK_WORK) {
+                    int a = Expander.alternative(g, sh.sys, id, level, k);
+                    walk(expander, g.rhs, g.rhsStart[a], g.rhsStart[a + 1], level - 1, k, g.rhsStart[a], parts);
+                } else {
+                    expander.run(turtle, id, level, k, null);
+                }
+                continue;
+            }
+            if (g.op[id] == TurtleOp.PUSH) {
+                int j = matchingPop(seq, i, to);
+                if (j > 0 && sh.work(seq, i + 1, j, level) >= MIN_FORK_WORK) {
+                    /* la branche part de l'état courant et le rend intact */
+                    RecordingTurtle branch = new RecordingTurtle(
+                            new Point2D.Double(turtle.getX(), turtle.getY()), turtle.getAngle(),
+                            new SegmentBuffer(16));
+                    branch.setUnits(sh.step, sh.unitAngle);
+                    branch.setFused(turtle.isFused());
+                    BranchTask task = new BranchTask(sh, seq, i + 1, j, level, parent, base, branch);
+                    task.fork();
+                    parts.add(turtle.redirect(new SegmentBuffer(16)));
+                    parts.add(task);
+                    i = j; // push et pop sautés : état inchangé
+                    continue;
+                }
+            }
+            TurtleOp.apply(turtle, g.op[id]);
+        }
+    }
+
+    /** Position du pop qui ferme le push en {@code i}, ou -1. */
+    private int matchingPop(int[] seq, int i, int to) {
+        byte[] op = sh.g.op;
+        int depth = 0;
+        for (int k = i; k < to; ++k) {
+            if (op[seq[k]] == TurtleOp.PUSH)
+                ++depth;
+            else if (op[seq[k]] == TurtleOp.POP && --depth == 0)
+                return k;
+        }
+        return -1;
+    }
+
+    /** Données communes aux tâches d'une même expansion (lecture seule). */
+    private static final class Shared {
+        final Grammar g;
+        final AbstractLSystem sys;
+        final double step, unitAngle;
+        /** (niveau, symbole) -> nombre de symboles exécutés, saturé */
+        private final long[] work;
+
+        Shared(Grammar g, AbstractLSystem sys, double step, double unitAngle, int n) {
+            this.g = g;
+            this.sys = sys;
+            this.step = step;
+            this.unitAngle = unitAngle;
+            this.work = g.lengths(n);
+        }
+
+        long work(int id, int level) {
+            return work[level * g.size() + id];
+        }
+
+        long work(int[] seq, int from, int to, int level) {
+            long w = 0;
+            for (int i = from; i < to; ++i)
+                w = Grammar.saturatedAdd(w, work(seq[i], level));
+            return w;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package lindenmayer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Sortie texte formatée en parallèle : les éléments d'un tracé sont coupés
+ * en morceaux, chaque morceau est formaté dans son propre tampon d'octets
+ * (pool commun), puis les tampons sont écrits dans l'ordre. Le formatage
+ * des nombres, qui domine la sortie, profite ainsi de tous les cœurs.
+ *
+ * <p>Le format est indépendant du texte produit (EPS, ou tout autre format
+ * ligne à ligne) ; il doit seulement savoir formater un morceau seul, à
+ * partir de son indice de début. On formate au plus quelques morceaux par
+ * cœur d'avance, pour borner la mémoire.
+ */
+public final class ChunkedOutput {
+    /** Éléments par morceau, par défaut. */
+    public static final int CHUNK = 1 << 14;
+
+    /** Formatage d'un morceau : les éléments {@code from .. to-1}, dans {@code out}. */
+    @FunctionalInterface
+    public interface Format {
+        void format(int from, int to, EpsWriter out);
+    }
+
+    /** Tampon d'un morceau, vidé sans copie dans la sortie. */
+    private static final class Block extends ByteArrayOutputStream {
+        Block() {
+            super(1 << 16);
+        }
+
+        void writeTo(EpsWriter out) {
+            out.write(buf, 0, count);
+        }
+    }
+
+    private ChunkedOutput() {
+    }
+
+    /**
+     * Formate les éléments {@code 0 .. size-1} par morceaux de {@code chunk}
+     * et les écrit dans {@code out}, dans l'ordre.
+     */
+    public static void write(int size, int chunk, Format format, EpsWriter out) {
+        if (chunk <= 0)
+            throw new IllegalArgumentException("chunk = " + chunk);
+        int chunks = (int) ((size + (long) chunk - 1) / chunk);
+        if (chunks <= 1) { // rien à partager : directement dans la sortie
+            format.format(0, size, out);
+            return;
+        }
+        int batch = 4 * ForkJoinPool.getCommonPoolParallelism();
+        for (int first = 0; first < chunks; first += batch) {
+            Block[] blocks = IntStream.range(first, Math.min(chunks, first + batch)).parallel().mapToObj(c -> {
+                Block block = new Block();
+                EpsWriter w = new EpsWriter(block);
+                format.format(c * chunk, (int) Math.min(size, (long) (c + 1) * chunk), w);
+                w.flush();
+                return block;
+            }).toArray(Block[]::new);
+            for (Block block : blocks)
+                block.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package lindenmayer;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Expansion parallèle des courbes sans crochets (Sierpinski, hexamaze...).
+ *
+ * <p>Sans push/pop, un morceau de la dérivation agit sur la tortue comme un
+ * déplacement rigide (dx, dy, dθ), exprimé dans le repère de la tortue au
+ * début du morceau ; ces transformations forment un monoïde. On découpe la
+ * génération n en morceaux (sous-arbres des premiers niveaux), on calcule en
+ * parallèle la transformation de chaque morceau, puis un préfixe parallèle
+ * ({@link Arrays#parallelPrefix}) donne l'état de départ de chacun ; les
+ * segments sont alors émis en parallèle et recollés dans l'ordre.
+ *
+ * <p>Les départs des morceaux sont obtenus par composition : le tracé égale
+ * celui d'une expansion séquentielle à l'arrondi près. Pour une grammaire
+ * déterministe, la transformation d'un morceau se lit dans des résumés
+ * mémorisés par (symbole, niveau) ({@link #moves}), comme ceux de
+ * {@link AnalyticBounds} : chaque morceau n'est développé qu'une fois. Une
+ * grammaire stochastique convient en mode compteur : chaque morceau garde la
+ * clé de son nœud et y fait les mêmes choix que le parcours séquentiel ; sa
+ * transformation vient alors d'une première expansion d'essai.
+ */
+final class CurveScan {
+    /** En deçà de ce nombre de symboles exécutés, le découpage ne vaut pas la peine. */
+    static final long MIN_WORK = 1 << 14;
+
+    private CurveScan() {
+    }
+
+    /**
+     * Vrai si la grammaire est sans push/pop (le caractère déterministe ou non
+     * est vérifié par l'appelant).
+     */
+    static boolean supports(Grammar g) {
+        for (byte op : g.op) {
+            if (op == TurtleOp.PUSH || op == TurtleOp.POP)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Développe {@code seq} après n réécritures sur la tortue, en parallèle.
+     *
+     * @param sys L-système en mode compteur qui choisit les règles ; null si
+     *            la grammaire est déterministe
+     * @param box {minX, minY, maxX, maxY}, élargi aux extrémités des segments
+     */
+    static void tell(Grammar g, AbstractLSystem sys, RecordingTurtle turtle, int[] seq, int n, double[] box) {
+        double step = turtle.getUnitStep(), unitAngle = turtle.getUnitAngle();
+        long[] len = g.lengths(n);
+
+        /* 1) découpage : on déplie les premiers niveaux jusqu'à avoir assez de morceaux */
+        int target = 16 * Runtime.getRuntime().availableProcessors();
+        int[] ids = seq.clone();
+        int[] levels = new int[ids.length];
+        Arrays.fill(levels, n);
+        long[] keys = new long[ids.length];
+        for (int i = 0; i < keys.length; ++i)
+            keys[i] = AbstractLSystem.childKey(AbstractLSystem.ROOT_KEY, i);
+        long total = 0;
+        for (int id : ids)
+            total = Grammar.saturatedAdd(total, len[n * g.size() + id]);
+        if (total < MIN_WORK) {
+            Expander expander = new Expander(g, sys);
+            for (int i = 0; i < seq.length; ++i)
+                expander.run(turtle, seq[i], n, keys[i], box);
+            return;
+        }
+        while (ids.length < target) {
+            int[] alt = new int[ids.length]; // alternative choisie, ou -1
+            int count = 0;
+            for (int i = 0; i < ids.length; ++i) {
+                if (levels[i] > 0 && g.altCount[ids[i]] > 0) {
+                    alt[i] = Expander.alternative(g, sys, ids[i], levels[i], keys[i]);
+                    count += g.rhsStart[alt[i] + 1] - g.rhsStart[alt[i]];
+                } else {
+                    alt[i] = -1;
+                    ++count;
+                }
+            }
+            if (count == ids.length)
+                break; // plus rien à déplier
+            int[] nextIds = new int[count], nextLevels = new int[count];
+            long[] nextKeys = new long[count];
+            int k = 0;
+            for (int i = 0; i < ids.length; ++i) {
+                if (alt[i] >= 0) {
+                    int start = g.rhsStart[alt[i]];
+                    for (int j = start; j < g.rhsStart[alt[i] + 1]; ++j) {
+                        nextIds[k] = g.rhs[j];
+                        nextLevels[k] = levels[i] - 1;
+                        nextKeys[k++] = AbstractLSystem.childKey(keys[i], j - start);
+                    }
+                } else {
+                    nextIds[k] = ids[i];
+                    nextLevels[k] = levels[i];
+                    nextKeys[k++] = keys[i];
+                }
+            }
+            ids = nextIds;
+            levels = nextLevels;
+            keys = nextKeys;
+        }
+        int chunks = ids.length;
+        final int[] chunkIds = ids, chunkLevels = levels;
+        final long[] chunkKeys = keys;
+
+        /* 2) transformation de chaque morceau, depuis l'origine orientée à 0° :
+         *    lue dans les résumés (symbole, niveau) si la grammaire est
+         *    déterministe ; sinon le morceau est développé sur une tortue d'essai */
+        Rigid[] moves = new Rigid[chunks];
+        if (sys == null) {
+            Rigid[][] summary = moves(g, n, step, unitAngle);
+            for (int i = 0; i < chunks; ++i)
+                moves[i] = summary[chunkLevels[i]][chunkIds[i]];
+        } else {
+            IntStream.range(0, chunks).parallel().forEach(i -> {
+                FakeTurtle probe = new FakeTurtle(new Point2D.Double(0, 0), 0);
+                probe.setUnits(step, unitAngle);
+                new Expander(g, sys).run(probe, chunkIds[i], chunkLevels[i], chunkKeys[i], null);
+                Point2D end = probe.getPosition();
+                moves[i] = new Rigid(end.getX(), end.getY(), probe.getAngle());
+            });
+        }
+
+        /* 3) préfixe : moves[i] devient la transformation des morceaux 0..i */
+        Arrays.parallelPrefix(moves, Rigid::then);
+
+        /* 4) émission des segments, chaque morceau depuis son état de départ */
+        double x0 = turtle.getX(), y0 = turtle.getY(), a0 = turtle.getAngle();
+        RecordingTurtle[] parts = new RecordingTurtle[chunks];
+        IntStream.range(0, chunks).parallel().forEach(i -> {
+            double x = x0, y = y0, angle = a0;
+            if (i > 0) {
+                Rigid before = moves[i - 1];
+                double rad = Math.toRadians(a0);
+                x += before.dx() * Math.cos(rad) - before.dy() * Math.sin(rad);
+                y += before.dx() * Math.sin(rad) + before.dy() * Math.cos(rad);
+                angle += before.dtheta();
+            }
+            RecordingTurtle part = new RecordingTurtle(new Point2D.Double(x, y), angle, new SegmentBuffer(16));
+            part.setUnits(step, unitAngle);
+            part.setFused(turtle.isFused());
+            new Expander(g, sys).run(part, chunkIds[i], chunkLevels[i], chunkKeys[i], null);
+            parts[i] = part;
+        });
+
+        SegmentBuffer out = turtle.segments();
+        for (RecordingTurtle part : parts) {
+            out.append(part.segments());
+            Rectangle2D r = part.segments().getBounds();
+            if (r != null) {
+                box[0] = Math.min(box[0], r.getMinX());
+                box[1] = Math.min(box[1], r.getMinY());
+                box[2] = Math.max(box[2], r.getMaxX());
+                box[3] = Math.max(box[3], r.getMaxY());
+            }
+        }
+        RecordingTurtle last = parts[chunks - 1];
+        turtle.setState(last.getX(), last.getY(), last.getAngle());
+    }
+
+    /**
+     * Déplacement net de chaque symbole d'une grammaire déterministe sans
+     * crochets : {@code moves[l][s]} pour le symbole {@code s} après
+     * {@code l} réécritures, composé à partir de son membre droit au niveau
+     * {@code l-1}. Le déplacement est exprimé dans le repère de la tortue :
+     * il ne dépend pas de l'orientation de départ. Coût
+     * O(n · |membres droits|), sans rien développer.
+     */
+    static Rigid[][] moves(Grammar g, int n, double step, double unitAngle) {
+        Rigid[][] moves = new Rigid[n + 1][g.size()];
+        for (int s = 0; s < g.size(); ++s) {
+            byte op = g.op[s];
+            if (op == TurtleOp.DRAW || op == TurtleOp.MOVE)
+                moves[0][s] = new Rigid(step, 0, 0);
+            else
+                moves[0][s] = new Rigid(0, 0, TurtleOp.turns(op) * unitAngle); // virage, ou rien
+        }
+        for (int l = 1; l <= n; ++l) {
+            for (int s = 0; s < g.size(); ++s) {
+                if (g.altCount[s] == 0) {
+                    moves[l][s] = moves[0][s];
+                    continue;
+                }
+                Rigid m = Rigid.IDENTITY;
+                int a = g.altStart[s];
+                for (int i = g.rhsStart[a]; i < g.rhsStart[a + 1]; ++i)
+                    m = m.then(moves[l - 1][g.rhs[i]]);
+                moves[l][s] = m;
+            }
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,243 @@
+package lindenmayer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Génération n d'une grammaire déterministe, sous forme de graphe de
+ * dérivation partagé (voir {@link LSystem#derivation(int)}).
+ *
+ * <p>Chaque nœud est un couple (symbole, profondeur) unique : deux
+ * occurrences du même symbole au même niveau ont le même sous-arbre, donc
+ * le même nœud. Le graphe compte au plus |alphabet|·(n+1) nœuds, alors que
+ * la chaîne qu'il représente croît exponentiellement ; on la parcourt sans
+ * jamais la construire, par {@link #iterator()} ou {@link #stream()}.
+ */
+public final class Derivation implements Iterable<Symbol> {
+
+    /** Sous-dérivation d'un symbole après {@link #depth()} réécritures. */
+    public static final class Node {
+        private final Symbol symbol;
+        private final int depth;
+        private Node[] children;
+        private long length;
+
+        private Node(Symbol symbol, int depth) {
+            this.symbol = symbol;
+            this.depth = depth;
+        }
+
+        /** Symbole réécrit. */
+        public Symbol symbol() {
+            return symbol;
+        }
+
+        /** Nombre de réécritures restantes (0 pour une feuille). */
+        public int depth() {
+            return depth;
+        }
+
+        /** Sous-dérivations du membre droit, dans l'ordre ; vide pour une feuille. */
+        public List<Node> children() {
+            return List.of(children);
+        }
+
+        /** Nombre de symboles de la sous-dérivation, saturé à {@link Long#MAX_VALUE}. */
+        public long length() {
+            return length;
+        }
+
+        /** Vrai si le nœud est un symbole de la génération (terminal ou profondeur 0). */
+        public boolean isLeaf() {
+            return children.length == 0;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + "/" + depth;
+        }
+    }
+
+    private static final Node[] LEAF = new Node[0];
+
+    private final Node[] roots;
+    private final int n;
+    private final long length;
+    private int nodes;
+
+    /**
+     * @param seq ordinaux des symboles de départ
+     * @throws IllegalStateException si la grammaire est aléatoire
+     */
+    Derivation(Grammar g, int[] seq, int n) {
+        if (!g.deterministic)
+            throw new IllegalStateException("Règles aléatoires : dérivation non partagée");
+        this.n = n;
+        Node[] table = new Node[(n + 1) * g.size()];
+        this.roots = new Node[seq.length];
+        long total = 0;
+        for (int i = 0; i < seq.length; ++i) {
+            roots[i] = node(g, table, seq[i], n);
+            total = Grammar.saturatedAdd(total, roots[i].length);
+        }
+        this.length = total;
+    }
+
+    /** Nœud unique de (id, depth), construit au besoin (profondeur d'abord). */
+    private Node node(Grammar g, Node[] table, int id, int depth) {
+        if (depth > 0 && g.altCount[id] == 0)
+            depth = 0; // terminal : même feuille à tous les niveaux
+        int slot = depth * g.size() + id;
+        Node node = table[slot];
+        if (node != null)
+            return node;
+        node = new Node(g.symbols[id], depth);
+        ++nodes;
+        if (depth == 0) {
+            node.children = LEAF;
+            node.length = 1;
+        } else {
+            int a = g.altStart[id];
+            node.children = new Node[g.rhsStart[a + 1] - g.rhsStart[a]];
+            for (int i = 0; i < node.children.length; ++i) {
+                node.children[i] = node(g, table, g.rhs[g.rhsStart[a] + i], depth - 1);
+                node.length = Grammar.saturatedAdd(node.length, node.children[i].length);
+            }
+        }
+        table[slot] = node;
+        return node;
+    }
+
+    /** Nombre de réécritures. */
+    public int generation() {
+        return n;
+    }
+
+    /** Nombre de symboles de la génération, saturé à {@link Long#MAX_VALUE}. */
+    public long length() {
+        return length;
+    }
+
+    /** Nombre de nœuds distincts du graphe. */
+    public int nodeCount() {
+        return nodes;
+    }
+
+    /** Sous-dérivations des symboles de départ, dans l'ordre. */
+    public List<Node> roots() {
+        return List.of(roots);
+    }
+
+    /** Symboles de la génération, de gauche à droite. */
+    @Override
+    public Iterator<Symbol> iterator() {
+        return new Iterator<>() {
+            private Node[][] frames = { roots };
+            private int[] pos = new int[1];
+            private int top = 1;
+
+            @Override
+            public boolean hasNext() {
+                while (top > 0 && pos[top - 1] == frames[top - 1].length)
+                    --top;
+                return top > 0;
+            }
+
+            @Override
+            public Symbol next() {
+                while (hasNext()) {
+                    Node node = frames[top - 1][pos[top - 1]++];
+                    if (node.isLeaf())
+                        return node.symbol;
+                    if (top == frames.length) {
+                        frames = Arrays.copyOf(frames, 2 * top);
+                        pos = Arrays.copyOf(pos, 2 * top);
+                    }
+                    frames[top] = node.children;
+                    pos[top++] = 0;
+                }
+                throw new NoSuchElementException();
+            }
+        };
+    }
+
+    /**
+     * Symboles de la génération, découpables pour un parcours parallèle :
+     * un morceau est une suite de sous-arbres, et on le coupe entre deux
+     * sous-arbres (après avoir déplié le premier s'il est seul).
+     */
+    @Override
+    public Spliterator<Symbol> spliterator() {
+        return new NodeSpliterator(new ArrayDeque<>(List.of(roots)), length);
+    }
+
+    /** Flux séquentiel des symboles ; {@code .parallel()} pour le découper. */
+    public Stream<Symbol> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private static final class NodeSpliterator implements Spliterator<Symbol> {
+        /** sous-arbres restants, le prochain en tête */
+        private final ArrayDeque<Node> pending;
+        private long remaining;
+
+        NodeSpliterator(ArrayDeque<Node> pending, long remaining) {
+            this.pending = pending;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Symbol> action) {
+            Node node;
+            while ((node = pending.pollFirst()) != null && !node.isLeaf()) {
+                for (int i = node.children.length - 1; i >= 0; --i)
+                    pending.addFirst(node.children[i]);
+            }
+            if (node == null)
+                return false;
+            --remaining;
+            action.accept(node.symbol);
+            return true;
+        }
+
+        @Override
+        public Spliterator<Symbol> trySplit() {
+            while (pending.size() == 1 && !pending.peekFirst().isLeaf()) {
+                Node node = pending.pollFirst();
+                for (Node child : node.children)
+                    pending.addLast(child);
+            }
+            int half = pending.size() / 2;
+            if (half == 0)
+                return null;
+            ArrayDeque<Node> prefix = new ArrayDeque<>(half);
+            long size = 0;
+            for (int i = 0; i < half; ++i) {
+                Node node = pending.pollFirst();
+                size = Grammar.saturatedAdd(size, node.length);
+                prefix.addLast(node);
+            }
+            if (remaining != Long.MAX_VALUE)
+                remaining -= size;
+            return new NodeSpliterator(prefix, size);
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            int c = ORDERED | NONNULL | IMMUTABLE;
+            return remaining == Long.MAX_VALUE ? c : c | SIZED | SUBSIZED;
+        }
+    }
+}
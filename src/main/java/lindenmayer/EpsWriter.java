@@ -0,0 +1,269 @@
+package lindenmayer;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Écriture rapide d'un fichier EPS : les nombres sont formatés en virgule
+ * fixe directement dans un tampon d'octets réutilisé, sans
+ * {@link java.util.Formatter}, sans locale et sans boxing, puis vidés par
+ * gros blocs dans un {@link OutputStream}, un canal (par exemple un
+ * {@link java.nio.channels.FileChannel}) ou un {@link Writer}.
+ *
+ * <p>{@link #number(double)} produit exactement le texte de
+ * {@code String.format(Locale.ROOT, "%.3f", v)}, y compris « -0.000 ».
+ * Les erreurs d'entrée-sortie sont relancées en {@link UncheckedIOException}.
+ */
+public final class EpsWriter implements Flushable, Closeable {
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    /** Au-delà, le calcul rapide pourrait se tromper d'arrondi. */
+    private static final double FAST_LIMIT = 1e7;
+
+    private final byte[] buf;
+    private int count;
+
+    private final OutputStream stream;
+    private final WritableByteChannel channel;
+    private final Writer writer;
+
+    /** @param out flux de sortie, vidé par blocs de 64 Kio */
+    public EpsWriter(OutputStream out) {
+        this(out, null, null);
+    }
+
+    /** @param out canal de sortie, vidé par blocs de 64 Kio */
+    public EpsWriter(WritableByteChannel out) {
+        this(null, out, null);
+    }
+
+    /**
+     * Écrit dans un {@link Writer} déjà utilisé par ailleurs : le tampon y est
+     * vidé à chaque fin de ligne, pour garder l'ordre des écritures.
+     */
+    public EpsWriter(Writer out) {
+        this(null, null, out);
+    }
+
+    private EpsWriter(OutputStream stream, WritableByteChannel channel, Writer writer) {
+        this.stream = stream;
+        this.channel = channel;
+        this.writer = writer;
+        this.buf = new byte[writer == null ? 1 << 16 : 256];
+    }
+
+    /** Ajoute un texte tel quel (UTF-8). */
+    public EpsWriter text(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c >= 0x80) { // rare : en-têtes seulement
+                if (writer == null) {
+                    bytes(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                } else {
+                    flushBuffer();
+                    write(s.substring(i));
+                }
+                return this;
+            }
+            ensure(1);
+            buf[count++] = (byte) c;
+        }
+        return this;
+    }
+
+    /**
+     * Ajoute des octets déjà formatés (voir {@link ChunkedOutput}) ; un gros
+     * bloc part directement vers la destination.
+     */
+    public EpsWriter write(byte[] b, int off, int len) {
+        if (len <= buf.length - count) {
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        } else {
+            flushBuffer();
+            drain(b, off, len);
+        }
+        if (writer != null)
+            flushBuffer();
+        return this;
+    }
+
+    /** Ajoute un espace. */
+    public EpsWriter space() {
+        ensure(1);
+        buf[count++] = ' ';
+        return this;
+    }
+
+    /** Termine la ligne (séparateur du système, comme {@code %n}). */
+    public EpsWriter newline() {
+        bytes(NEWLINE);
+        if (writer != null)
+            flushBuffer();
+        return this;
+    }
+
+    /** Ligne « x y op », coordonnées au format {@code %.3f}. */
+    public EpsWriter point(double x, double y, String op) {
+        return number(x).space().number(y).space().text(op).newline();
+    }
+
+    /** Ajoute {@code v} au format {@code %.3f}. */
+    public EpsWriter number(double v) {
+        double a = Math.abs(v);
+        if (!(a < FAST_LIMIT)) // grand, infini ou NaN
+            return slow(v);
+        double scaled = a * 1000;
+        long units = (long) scaled;
+        double frac = scaled - units;
+        if (Math.abs(frac - 0.5) < 1e-4) // presque à mi-chemin : arrondi décidé par la décimale exacte
+            return slow(v);
+        if (frac > 0.5)
+            ++units;
+
+        ensure(24);
+        if (Double.doubleToRawLongBits(v) < 0)
+            buf[count++] = '-'; // y compris -0.0, comme %.3f
+        long whole = units / 1000;
+        int milli = (int) (units - whole * 1000);
+        count = appendLong(whole, count);
+        buf[count] = '.';
+        buf[count + 1] = (byte) ('0' + milli / 100);
+        buf[count + 2] = (byte) ('0' + milli / 10 % 10);
+        buf[count + 3] = (byte) ('0' + milli % 10);
+        count += 4;
+        return this;
+    }
+
+    /**
+     * Ajoute {@code m} millièmes sous la forme décimale la plus courte :
+     * 2000 → « 2 », -250 → « -0.25 », 0 → « 0 ».
+     */
+    public EpsWriter milli(long m) {
+        ensure(24);
+        if (m < 0) {
+            buf[count++] = '-';
+            m = -m; // |Long.MIN_VALUE| / 1000 ne sert jamais de coordonnée
+        }
+        long whole = m / 1000;
+        int frac = (int) (m - whole * 1000);
+        count = appendLong(whole, count);
+        if (frac != 0) {
+            buf[count++] = '.';
+            buf[count++] = (byte) ('0' + frac / 100);
+            if (frac % 100 != 0) {
+                buf[count++] = (byte) ('0' + frac / 10 % 10);
+                if (frac % 10 != 0)
+                    buf[count++] = (byte) ('0' + frac % 10);
+            }
+        }
+        return this;
+    }
+
+    /** Cas rares : même règle que {@link java.util.Formatter} (décimale la plus courte, puis HALF_UP). */
+    private EpsWriter slow(double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v))
+            return text(Double.isNaN(v) ? "NaN" : v > 0 ? "Infinity" : "-Infinity");
+        String s = new BigDecimal(Double.toString(Math.abs(v))).setScale(3, RoundingMode.HALF_UP).toPlainString();
+        return text(Double.doubleToRawLongBits(v) < 0 ? "-" + s : s);
+    }
+
+    private int appendLong(long value, int at) {
+        if (value < 10) {
+            buf[at] = (byte) ('0' + value);
+            return at + 1;
+        }
+        int digits = 0;
+        for (long t = value; t > 0; t /= 10)
+            ++digits;
+        for (int i = at + digits - 1; i >= at; --i) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return at + digits;
+    }
+
+    private void bytes(byte[] b) {
+        for (int i = 0; i < b.length;) {
+            ensure(1);
+            int n = Math.min(b.length - i, buf.length - count);
+            System.arraycopy(b, i, buf, count, n);
+            count += n;
+            i += n;
+        }
+    }
+
+    private void ensure(int room) {
+        if (count + room > buf.length)
+            flushBuffer();
+    }
+
+    private void flushBuffer() {
+        drain(buf, 0, count);
+        count = 0;
+    }
+
+    /** Écrit des octets dans la destination, sans passer par le tampon. */
+    private void drain(byte[] b, int off, int len) {
+        try {
+            if (stream != null) {
+                stream.write(b, off, len);
+            } else if (channel != null) {
+                ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+                while (bb.hasRemaining())
+                    channel.write(bb);
+            } else {
+                for (int i = off; i < off + len; ++i)
+                    writer.write(b[i]); // que de l'ASCII ici
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(String s) {
+        try {
+            writer.write(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Vide le tampon et la destination. */
+    @Override
+    public void flush() {
+        flushBuffer();
+        try {
+            if (stream != null)
+                stream.flush();
+            else if (writer != null)
+                writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Vide le tampon et ferme la destination. */
+    @Override
+    public void close() {
+        flushBuffer();
+        try {
+            if (stream != null)
+                stream.close();
+            else if (channel != null)
+                channel.close();
+            else
+                writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
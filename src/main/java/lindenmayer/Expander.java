@@ -0,0 +1,129 @@
+package lindenmayer;
+
+import java.util.Arrays;
+
+/**
+ * Moteur d'expansion itératif d'une grammaire compilée.
+ *
+ * <p>Parcourt en profondeur l'arbre de dérivation d'un symbole avec une pile
+ * explicite de cadres (position, fin) dans les membres droits de la
+ * {@link Grammar} : le cadre à la hauteur k contient des symboles de niveau
+ * {@code level-1-k}. Les règles sont tirées dans l'ordre préfixe, comme le
+ * ferait la récursion, et rien n'est alloué par symbole. Les piles sont
+ * réutilisées d'un appel à l'autre : une instance par fil d'exécution.
+ * Les suites de symboles exécutés tels quels (tout un membre droit au
+ * dernier niveau) passent d'un bloc à la destination, tortue ou autre
+ * ({@link OpSink#execute(byte[], int, int, double[])}) ; vers une
+ * {@link RecordingTurtle}, elles sont posées d'un bloc par leur macro-op
+ * ({@link MacroOps}), et les sous-arbres qui se répètent sont posés depuis
+ * le cache d'instances ({@link InstanceCache}).
+ *
+ * <p>En mode compteur ({@link AbstractLSystem#isCounterBased()}), chaque
+ * cadre garde aussi la clé de son nœud : le choix d'une règle ne dépend que
+ * du chemin dans l'arbre, et un sous-arbre donne le même résultat quel que
+ * soit l'ordre ou le fil qui le développe. La clé d'un enfant vient de son
+ * indice d'origine ({@link Grammar#rhsKey}), qui survit à l'optimisation.
+ */
+final class Expander {
+    private final Grammar g;
+    /** source des choix de règles ; null si la grammaire est déterministe */
+    private final AbstractLSystem sys;
+    /** choix par clé de chemin plutôt que par tirage séquentiel */
+    private final boolean keyed;
+
+    private int[] framePos = new int[16];
+    private int[] frameEnd = new int[16];
+    private long[] frameKey = new long[16];
+
+    /**
+     * @param sys L-système dont on suit le mode aléatoire ; null pour toujours
+     *            prendre la première alternative (grammaire déterministe)
+     */
+    Expander(Grammar g, AbstractLSystem sys) {
+        this.g = g;
+        this.sys = sys;
+        this.keyed = sys != null && sys.isCounterBased();
+    }
+
+    /**
+     * Passe à {@code turtle} les codes du sous-arbre du symbole {@code id}
+     * après {@code level} réécritures.
+     *
+     * @param key clé du nœud (mode compteur), voir {@link AbstractLSystem#childKey}
+     * @param box {minX, minY, maxX, maxY}, élargi aux positions visitées ;
+     *            null pour ne pas suivre le bounding-box
+     */
+    void run(OpSink turtle, int id, int level, long key, double[] box) {
+        if (level > 0 && g.altCount[id] > 0 && turtle instanceof RecordingTurtle recorder) {
+            MacroOps macros = recorder.macros(g);
+            InstanceCache instances = macros == null ? null : InstanceCache.of(g);
+            if (instances != null && instances.stamp(recorder, macros, id, level, box))
+                return;
+        }
+        expand(turtle, id, level, key, box);
+    }
+
+    /** Comme {@link #run}, sans chercher le sous-arbre entier dans le cache d'instances. */
+    void expand(OpSink turtle, int id, int level, long key, double[] box) {
+        if (level == 0 || g.altCount[id] == 0) { // terminal à ce niveau
+            turtle.execute(g.op, id, id + 1, box);
+            return;
+        }
+        if (level > framePos.length) {
+            framePos = Arrays.copyOf(framePos, level);
+            frameEnd = Arrays.copyOf(frameEnd, level);
+            frameKey = Arrays.copyOf(frameKey, level);
+        }
+        RecordingTurtle recorder = turtle instanceof RecordingTurtle r ? r : null;
+        MacroOps macros = recorder == null ? null : recorder.macros(g);
+        InstanceCache instances = macros == null ? null : InstanceCache.of(g);
+        int top = enter(id, level, key, 0);
+        while (top > 0) {
+            int pos = framePos[top - 1];
+            if (pos == frameEnd[top - 1]) { // expansion épuisée : on remonte
+                --top;
+                continue;
+            }
+            int c = g.rhs[pos];
+            if (level - top > 0 && g.altCount[c] > 0) { // non-terminal : on descend
+                framePos[top - 1] = pos + 1;
+                if (instances != null && instances.stamp(recorder, macros, c, level - top, box))
+                    continue; // sous-arbre déjà enregistré
+                long k = keyed ? AbstractLSystem.childKey(frameKey[top - 1], g.rhsKey[pos]) : 0;
+                top = enter(c, level - top, k, top);
+            } else { // suite exécutée telle quelle : tout le reste au niveau 0, sinon les terminaux
+                int end = level - top == 0 ? frameEnd[top - 1] : g.terminalEnd[pos];
+                framePos[top - 1] = end;
+                if (macros == null || end - pos < MacroOps.MIN_OPS || !recorder.stamp(macros, pos, end, box))
+                    turtle.execute(g.rhsOp, pos, end, box);
+            }
+        }
+    }
+
+    /** Choisit une alternative pour {@code id} et l'empile ; rend la nouvelle hauteur. */
+    private int enter(int id, int level, long key, int top) {
+        int a;
+        if (sys != null && !keyed) // tirage séquentiel, même pour une seule alternative
+            a = g.altStart[id] + sys.rndInt(g.altCount[id]);
+        else
+            a = alternative(g, sys, id, level, key);
+        framePos[top] = g.rhsStart[a];
+        frameEnd[top] = g.rhsStart[a + 1];
+        frameKey[top] = key;
+        return top + 1;
+    }
+
+    /**
+     * Alternative choisie pour le nœud ({@code id}, {@code level}) de clé
+     * {@code key}, sans tirage séquentiel : première alternative si
+     * {@code sys} est null, sinon choix par clé (mode compteur).
+     *
+     * @return indice de l'alternative dans {@link Grammar#rhsStart}
+     */
+    static int alternative(Grammar g, AbstractLSystem sys, int id, int level, long key) {
+        int count = g.altCount[id];
+        if (sys == null || count == 1)
+            return g.altStart[id];
+        return g.altStart[id] + sys.rndInt(key, level, count);
+    }
+}
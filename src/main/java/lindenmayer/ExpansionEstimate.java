@@ -0,0 +1,258 @@
+package lindenmayer;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Taille de la génération n d'un {@link LSystem}, calculée sans la développer
+ * (voir {@link LSystem#estimate(int)}) : nombre de symboles exécutés, de pas
+ * draw/move, de push, profondeur maximale de la pile et borne de la taille
+ * du fichier EPS produit par Main.
+ *
+ * <p>Les comptes viennent de la matrice de production appliquée n fois au
+ * vecteur de l'axiome, niveau par niveau et en {@link BigInteger} : ils sont
+ * exacts, même quand ils dépassent un {@code long}. Pour une grammaire
+ * stochastique, chaque compte est un intervalle [min, max] sur tous les
+ * choix possibles, avec l'espérance pour des alternatives équiprobables ;
+ * la profondeur est alors une borne supérieure.
+ */
+public final class ExpansionEstimate {
+
+    /**
+     * Compte sur toutes les dérivations possibles.
+     *
+     * @param min      plus petite valeur
+     * @param max      plus grande valeur
+     * @param expected espérance, alternatives équiprobables
+     */
+    public record Range(BigInteger min, BigInteger max, double expected) {
+        /** Maximum ramené à un {@code long}, saturé à {@link Long#MAX_VALUE}. */
+        public long maxSaturated() {
+            return max.bitLength() < Long.SIZE ? max.longValue() : Long.MAX_VALUE;
+        }
+    }
+
+    /** Octets fixes de l'en-tête et de la fin du fichier EPS (approximatif). */
+    private static final long EPS_OVERHEAD = 256;
+    /** Rupture du chemin tous les {@link PostScriptTurtle#MAX_PATH} éléments. */
+    private static final String STROKE = "stroke newpath ";
+
+    private final int n;
+    private final boolean exact;
+    private final Range symbols, draws, moves, pushes;
+    private final long maxDepth;
+
+    /**
+     * @param seq ordinaux des symboles de départ
+     */
+    ExpansionEstimate(Grammar g, int[] seq, int n) {
+        this.n = n;
+        this.exact = g.deterministic;
+        int size = g.size();
+
+        /* comptes par symbole : niveau 0, puis réécritures successives */
+        Count[] count = new Count[4]; // symboles, draw, move, push
+        for (int q = 0; q < count.length; ++q)
+            count[q] = new Count(size);
+        long[] delta = new long[size], peak = new long[size]; // pile : variation, sommet
+        for (int s = 0; s < size; ++s) {
+            byte op = g.op[s];
+            count[0].leaf(s, true);
+            count[1].leaf(s, op == TurtleOp.DRAW);
+            count[2].leaf(s, op == TurtleOp.MOVE);
+            count[3].leaf(s, op == TurtleOp.PUSH);
+            delta[s] = op == TurtleOp.PUSH ? 1 : op == TurtleOp.POP ? -1 : 0;
+            peak[s] = Math.max(0, delta[s]);
+        }
+        for (int level = 1; level <= n; ++level) {
+            for (Count c : count)
+                c.rewrite(g);
+            long[] nextDelta = delta.clone(), nextPeak = peak.clone();
+            for (int s = 0; s < size; ++s) {
+                if (g.altCount[s] == 0)
+                    continue;
+                long d = Long.MIN_VALUE, p = Long.MIN_VALUE;
+                for (int a = g.altStart[s]; a < g.altStart[s] + g.altCount[s]; ++a) {
+                    long sum = 0, top = 0;
+                    for (int i = g.rhsStart[a]; i < g.rhsStart[a + 1]; ++i) {
+                        top = Math.max(top, add(sum, peak[g.rhs[i]]));
+                        sum = add(sum, delta[g.rhs[i]]);
+                    }
+                    d = Math.max(d, sum);
+                    p = Math.max(p, top);
+                }
+                nextDelta[s] = d;
+                nextPeak[s] = p;
+            }
+            delta = nextDelta;
+            peak = nextPeak;
+        }
+
+        this.symbols = count[0].sum(seq);
+        this.draws = count[1].sum(seq);
+        this.moves = count[2].sum(seq);
+        this.pushes = count[3].sum(seq);
+        long sum = 0, top = 0;
+        for (int s : seq) {
+            top = Math.max(top, add(sum, peak[s]));
+            sum = add(sum, delta[s]);
+        }
+        this.maxDepth = top;
+    }
+
+    /** Nombre de réécritures estimées. */
+    public int generation() {
+        return n;
+    }
+
+    /** Vrai si la grammaire est déterministe : min = max et profondeur exacte. */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /** Symboles exécutés (feuilles de l'arbre de dérivation). */
+    public Range symbols() {
+        return symbols;
+    }
+
+    /** Pas tracés (action draw). */
+    public Range draws() {
+        return draws;
+    }
+
+    /** Pas sans tracer (action move). */
+    public Range moves() {
+        return moves;
+    }
+
+    /** États empilés (action push). */
+    public Range pushes() {
+        return pushes;
+    }
+
+    /**
+     * Profondeur maximale de la pile de la tortue, saturée à
+     * {@link Long#MAX_VALUE} ; borne supérieure si la grammaire est
+     * stochastique.
+     */
+    public long maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Borne supérieure, en octets, du fichier EPS écrit par Main en mode
+     * compact ({@link PostScriptTurtle#setCompact}), pour le plus grand
+     * nombre de pas : au plus une ligne {@code dx dy l} par draw (les traits
+     * colinéaires fusionnés en font moins), une ligne {@code x y m} par
+     * rupture du chemin (après un move, un pop, ou au début d'un morceau du
+     * rejeu parallèle), un {@code stroke newpath} tous les
+     * {@link PostScriptTurtle#MAX_PATH} éléments, en-tête compris.
+     *
+     * @param maxAbsCoordinate plus grande coordonnée en valeur absolue
+     *                         (par exemple tirée de {@link LSystem#boundingBox})
+     * @param step             longueur d'un pas (paramètre « step »)
+     * @return nombre d'octets, saturé à {@link Long#MAX_VALUE}
+     */
+    public long projectedEpsBytes(double maxAbsCoordinate, double step) {
+        int newline = System.lineSeparator().length();
+        BigInteger line = BigInteger.valueOf(2 * width(step) + 3 + newline);               // "dx dy l"
+        BigInteger moveto = BigInteger.valueOf(2 * width(maxAbsCoordinate) + 3 + newline); // "x y m"
+        BigInteger steps = draws.max().add(moves.max());
+        BigInteger breaks = moves.max().add(pushes.max())
+                .add(steps.divide(BigInteger.valueOf(ChunkedOutput.CHUNK))).add(BigInteger.ONE);
+        BigInteger strokes = draws.max().add(breaks).divide(BigInteger.valueOf(PostScriptTurtle.MAX_PATH));
+        BigInteger bytes = draws.max().multiply(line)
+                .add(breaks.multiply(moveto))
+                .add(strokes.multiply(BigInteger.valueOf(STROKE.length())))
+                .add(BigInteger.valueOf(EPS_OVERHEAD));
+        return bytes.bitLength() < Long.SIZE ? bytes.longValue() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Plus long nombre de {@link EpsWriter#milli} jusqu'à |bound| : signe,
+     * partie entière, point et trois décimales.
+     */
+    private static long width(double bound) {
+        return 5 + Long.toString((long) Math.ceil(Math.abs(bound))).length();
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + n + (exact ? "" : " (stochastique)")
+                + " symboles=" + format(symbols) + " draw=" + format(draws)
+                + " move=" + format(moves) + " push=" + format(pushes)
+                + " profondeur=" + maxDepth;
+    }
+
+    private static String format(Range r) {
+        return r.min().equals(r.max()) ? r.max().toString()
+                : "[" + r.min() + ", " + r.max() + "] ~" + r.expected();
+    }
+
+    /** Somme saturée, dans les deux sens. */
+    private static long add(long a, long b) {
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0)
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        return r;
+    }
+
+    /**
+     * Un compte par symbole pour le niveau courant : une ligne du produit
+     * de la matrice de production par le vecteur des feuilles.
+     */
+    private static final class Count {
+        BigInteger[] min, max;
+        double[] expected;
+
+        Count(int size) {
+            min = new BigInteger[size];
+            max = new BigInteger[size];
+            expected = new double[size];
+        }
+
+        void leaf(int s, boolean counted) {
+            min[s] = max[s] = counted ? BigInteger.ONE : BigInteger.ZERO;
+            expected[s] = counted ? 1 : 0;
+        }
+
+        /** Passe au niveau suivant (les terminaux gardent leur compte). */
+        void rewrite(Grammar g) {
+            BigInteger[] nextMin = Arrays.copyOf(min, min.length), nextMax = Arrays.copyOf(max, max.length);
+            double[] nextExpected = expected.clone();
+            for (int s = 0; s < min.length; ++s) {
+                if (g.altCount[s] == 0)
+                    continue;
+                BigInteger lo = null, hi = null;
+                double e = 0;
+                for (int a = g.altStart[s]; a < g.altStart[s] + g.altCount[s]; ++a) {
+                    BigInteger sMin = BigInteger.ZERO, sMax = BigInteger.ZERO;
+                    for (int i = g.rhsStart[a]; i < g.rhsStart[a + 1]; ++i) {
+                        sMin = sMin.add(min[g.rhs[i]]);
+                        sMax = sMax.add(max[g.rhs[i]]);
+                        e += expected[g.rhs[i]];
+                    }
+                    lo = lo == null ? sMin : lo.min(sMin);
+                    hi = hi == null ? sMax : hi.max(sMax);
+                }
+                nextMin[s] = lo;
+                nextMax[s] = hi;
+                nextExpected[s] = e / g.altCount[s];
+            }
+            min = nextMin;
+            max = nextMax;
+            expected = nextExpected;
+        }
+
+        Range sum(int[] seq) {
+            BigInteger lo = BigInteger.ZERO, hi = BigInteger.ZERO;
+            double e = 0;
+            for (int s : seq) {
+                lo = lo.add(min[s]);
+                hi = hi.add(max[s]);
+                e += expected[s];
+            }
+            return new Range(lo, hi, e);
+        }
+    }
+}
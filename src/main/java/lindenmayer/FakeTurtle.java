@@ -1,28 +1,27 @@
 package lindenmayer;
 
 import java.awt.geom.Point2D;
-import java.util.ArrayDeque;
 
 public class FakeTurtle implements Turtle {
-    // Attributs privés
-    private Point2D.Double position;
-    private double angle; //en degré
-    private double step = 1.0;
-    private double unitAngle = 90.0;
+    // Attributs privés : état primitif, aucune allocation par pas
+    private double x, y;
+    private final Heading heading; // angle en degrés, pas et angle unitaires
 
-    private final ArrayDeque<State> stack = new ArrayDeque<>();
+    private final StateStack stack = new StateStack();
 
     // Constructeurs
     public FakeTurtle(Point2D.Double pos, double initialAngle) {
         
-        this.position = (Point2D.Double) pos.clone();
-        this.angle = initialAngle;
+        this.x = pos.x;
+        this.y = pos.y;
+        this.heading = new Heading(initialAngle, 1.0, 90.0);
     }
 
     @Override
     public void init(Point2D pos, double angle) {
-        this.position = (Point2D.Double) pos.clone();
-        this.angle = angle;
+        this.x = pos.getX();
+        this.y = pos.getY();
+        heading.set(angle);
     }
 
     @Override
@@ -36,74 +35,107 @@ public class FakeTurtle implements Turtle {
     }
 
     private void moveInternal() {
-        double radians = Math.toRadians(angle);
-        double dx = step * Math.cos(radians);
-        double dy = step * Math.sin(radians);
-        position.x += dx;
-        position.y += dy;
+        x += heading.dx(); // vecteur tabulé si l'angle unitaire divise 360
+        y += heading.dy();
     }
 
     @Override
     public void turnR() {
-        angle -= unitAngle;
+        heading.turnR();
+    }
+
+    @Override
+    public void turn(int k) {
+        heading.turn(k);
     }
 
     @Override
     public void turnL() {
-        angle += unitAngle;
+        heading.turnL();
     }
 
     @Override
     public void push() {
-        stack.push(new State(position, angle));
+        stack.push(x, y, heading.angle());
     }
 
     @Override
     public void pop() {
-        if (!stack.isEmpty()) {
-            State state = stack.pop();
-            this.position = (Point2D.Double) state.position.clone();
-            this.angle = state.angle;
+        if (stack.pop()) {
+            this.x = stack.x();
+            this.y = stack.y();
+            heading.set(stack.angle());
         } else {
             System.err.println("Stack is empty. Cannot pop.");
         }
     }
 
+    @Override
+    public void execute(byte[] ops, int from, int to, double[] box) {
+        for (int i = from; i < to; ++i) {
+            switch (ops[i]) {
+                case TurtleOp.DRAW -> draw();
+                case TurtleOp.MOVE -> move();
+                case TurtleOp.POP -> pop();
+                case TurtleOp.TURN_L -> {
+                    turnL();
+                    continue;
+                }
+                case TurtleOp.TURN_R -> {
+                    turnR();
+                    continue;
+                }
+                case TurtleOp.PUSH -> {
+                    push();
+                    continue;
+                }
+                case TurtleOp.STAY -> {
+                    stay();
+                    continue;
+                }
+                default -> {
+                    turn(TurtleOp.turns(ops[i])); // NONE : 0, symbole décoratif
+                    continue;
+                }
+            }
+            if (box != null)
+                TurtleOp.include(box, x, y);
+        }
+    }
+
     @Override
     public Point2D getPosition() {
-        return new Point2D.Double(position.x, position.y);
+        return new Point2D.Double(x, y);
+    }
+
+    @Override
+    public double getX() {
+        return x;
+    }
+
+    @Override
+    public double getY() {
+        return y;
     }
 
     @Override
     public double getAngle() {
-        return angle;
+        return heading.angle();
     }
 
     @Override
     public void setUnits(double step, double delta) {
-        this.step = step;
-        this.unitAngle = delta;
+        heading.setUnits(step, delta);
     }
 
     @Override
     public double getUnitStep() {
-        return step;
+        return heading.step();
     }
 
     @Override
     public double getUnitAngle() {
-        return unitAngle;
-    }
-
-    // Classe imbriquée pour encapsuler l'état
-    private static class State {
-        Point2D.Double position;
-        double angle;
-
-        State(Point2D.Double position, double angle) {
-            this.position = (Point2D.Double) position.clone();
-            this.angle = angle;
-        }
+        return heading.unit();
     }
 
 }
\ No newline at end of file
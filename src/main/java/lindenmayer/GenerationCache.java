@@ -0,0 +1,414 @@
+package lindenmayer;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Cache, devant {@link LSystem}, des spécifications déjà vues : pour une
+ * même spécification JSON, la grammaire compilée (initFromJson une seule
+ * fois) et les générations déjà développées, rangées en tableaux compacts
+ * d'ordinaux (un octet par symbole, deux au-delà de 256 symboles) avec
+ * leur bounding-box.
+ *
+ * <p>Une génération est désignée par (empreinte de la spécification, n,
+ * graine). L'empreinte ({@link #hash(JSONObject)}) ne dépend ni de l'ordre
+ * des clés ni de l'écriture des nombres ({@code 60} et {@code 60.0}), ni
+ * de la graine, qui est une coordonnée à part. Pour une grammaire
+ * déterministe, la graine ne change rien et vaut 0 dans la clé ; la
+ * génération n est alors obtenue en réécrivant la plus grande génération
+ * m &lt; n du cache, n - m fois, plutôt qu'en repartant de l'axiome. Une
+ * génération aléatoire dépend de la profondeur restante à chaque nœud
+ * (mode compteur) : elle est développée depuis l'axiome, avec les mêmes
+ * choix que {@link LSystem#applyRules} en mode compteur pour cette graine.
+ *
+ * <p>La mémoire est bornée en octets : au-delà, les entrées les moins
+ * récemment utilisées sont évincées (LRU) ; une entrée plus grosse que le
+ * budget n'est pas gardée. Accès synchronisés, développements hors verrou :
+ * deux fils peuvent développer la même génération, le résultat est le même.
+ */
+public final class GenerationCache {
+    /** Budget par défaut, en octets. */
+    public static final long BUDGET = 64L << 20;
+
+    /** Taille d'une entrée, hors tableaux. */
+    private static final long ENTRY_BYTES = 96;
+    /** Symboles décodés par appel à {@link Turtle#execute}. */
+    private static final int CHUNK = 4096;
+
+    /** Grammaire compilée d'une spécification. */
+    private record Compiled(JSONObject spec, LSystem sys, Grammar g, int[] axiom) {
+    }
+
+    private record Key(String hash, int n, long seed) {
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Object, Object> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    /** générations trouvées telles quelles, et prolongées depuis une plus courte (tests) */
+    int hits, extended;
+
+    /** @param maxBytes mémoire du cache, en octets */
+    public GenerationCache(long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("Budget négatif : " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    public GenerationCache() {
+        this(BUDGET);
+    }
+
+    /**
+     * Génération n de la spécification, pour la graine de sa clé
+     * « seed » (0 sans clé).
+     */
+    public Generation get(JSONObject spec, int n) {
+        return get(spec, n, spec.has("seed") ? spec.getLong("seed") : 0);
+    }
+
+    /**
+     * Génération n de la spécification pour la graine donnée.
+     *
+     * @throws IllegalArgumentException si n est négatif, ou si la
+     *                                  génération ne tient pas dans un tableau
+     */
+    public Generation get(JSONObject spec, int n, long seed) {
+        if (n < 0)
+            throw new IllegalArgumentException("Nombre de réécritures négatif : " + n);
+        String hash = hash(spec);
+        Compiled c = compiled(hash, spec);
+        Key key = new Key(hash, n, c.g.deterministic ? 0 : seed);
+        Generation gen;
+        synchronized (this) {
+            gen = (Generation) entries.get(key);
+            if (gen != null) {
+                ++hits;
+                return gen;
+            }
+        }
+        gen = c.g.deterministic ? extend(c, hash, n) : unfold(c, n, seed);
+        synchronized (this) {
+            put(key, gen, gen.bytes());
+        }
+        return gen;
+    }
+
+    /** Grammaire compilée de la spécification, depuis le cache si possible. */
+    private Compiled compiled(String hash, JSONObject spec) {
+        synchronized (this) {
+            Compiled c = (Compiled) entries.get(hash);
+            if (c != null)
+                return c;
+        }
+        LSystem sys = new LSystem();
+        sys.initFromJson(spec, new FakeTurtle(new Point2D.Double(0, 0), 0));
+        sys.setCounterBased(true); // choix par clé, voir unfold
+        Grammar g = sys.grammar();
+        Compiled c = new Compiled(spec, sys, g, sys.axiomOrdinals());
+        synchronized (this) {
+            put(hash, c, ENTRY_BYTES + 4L * (g.rhs.length + c.axiom.length) + 16L * g.size());
+        }
+        return c;
+    }
+
+    /**
+     * Génération n d'une grammaire déterministe : chaque pas remplace tout
+     * symbole à règle par le membre droit de sa règle, en partant de la
+     * plus grande génération plus courte du cache, ou de l'axiome.
+     */
+    private Generation extend(Compiled c, String hash, int n) {
+        Grammar g = c.g;
+        Generation from = null;
+        synchronized (this) {
+            for (int m = n - 1; m >= 0 && from == null; --m)
+                from = (Generation) entries.get(new Key(hash, m, 0));
+            if (from != null)
+                ++extended;
+        }
+        int width = width(g);
+        byte[] data;
+        int length, level;
+        if (from != null) {
+            data = from.data;
+            length = from.length;
+            level = from.n;
+        } else {
+            length = c.axiom.length;
+            data = new byte[length * width];
+            for (int i = 0; i < length; ++i)
+                put(data, width, i, c.axiom[i]);
+            level = 0;
+        }
+        long[] len = g.lengths(1);
+        for (; level < n; ++level) {
+            long next = 0;
+            for (int i = 0; i < length; ++i)
+                next += len[g.size() + ordinal(data, width, i)];
+            checkLength(next, width);
+            byte[] out = new byte[(int) next * width];
+            int k = 0;
+            for (int i = 0; i < length; ++i) {
+                int s = ordinal(data, width, i);
+                if (g.altCount[s] == 0) {
+                    put(out, width, k++, s);
+                    continue;
+                }
+                int a = g.altStart[s];
+                for (int j = g.rhsStart[a]; j < g.rhsStart[a + 1]; ++j)
+                    put(out, width, k++, g.rhs[j]);
+            }
+            data = out;
+            length = k;
+        }
+        return new Generation(c, n, data, width, length);
+    }
+
+    /**
+     * Génération n d'une grammaire aléatoire, développée depuis l'axiome par
+     * {@link Unfolder}, choix de règles en mode compteur pour la graine.
+     */
+    private Generation unfold(Compiled c, int n, long seed) {
+        Grammar g = c.g;
+        int width = width(g);
+        byte[] data = new byte[Math.max(16, c.axiom.length) * width];
+        int length = 0;
+        synchronized (c.sys) { // la graine de l'instance partagée
+            c.sys.setSeed(seed);
+            Unfolder unfolder = new Unfolder(g, c.sys);
+            for (int k = 0; k < c.axiom.length; ++k) {
+                int id = c.axiom[k];
+                if (n == 0 || g.altCount[id] == 0) {
+                    data = ensure(data, width, length);
+                    put(data, width, length++, id);
+                    continue;
+                }
+                unfolder.start(id, n, AbstractLSystem.childKey(AbstractLSystem.ROOT_KEY, k));
+                while (unfolder.hasNext()) {
+                    data = ensure(data, width, length);
+                    put(data, width, length++, unfolder.next());
+                }
+            }
+        }
+        return new Generation(c, n, Arrays.copyOf(data, length * width), width, length);
+    }
+
+    private static int width(Grammar g) {
+        return g.size() <= 256 ? 1 : 2;
+    }
+
+    private static void checkLength(long length, int width) {
+        if (length > (Integer.MAX_VALUE - 8) / width)
+            throw new IllegalArgumentException("Génération trop grande pour le cache : " + length + " symboles");
+    }
+
+    /** Tableau agrandi au besoin pour écrire le symbole {@code i}. */
+    private static byte[] ensure(byte[] data, int width, int i) {
+        if ((i + 1) * width <= data.length)
+            return data;
+        checkLength(2L * i, width);
+        return Arrays.copyOf(data, 2 * i * width);
+    }
+
+    private static void put(byte[] data, int width, int i, int s) {
+        if (width == 1) {
+            data[i] = (byte) s;
+        } else {
+            data[2 * i] = (byte) (s >>> 8);
+            data[2 * i + 1] = (byte) s;
+        }
+    }
+
+    private static int ordinal(byte[] data, int width, int i) {
+        if (width == 1)
+            return data[i] & 0xff;
+        return (data[2 * i] & 0xff) << 8 | data[2 * i + 1] & 0xff;
+    }
+
+    /** Ajoute une entrée, puis évince les plus anciennes au-delà du budget. */
+    private void put(Object key, Object value, long size) {
+        if (size > maxBytes)
+            return; // trop grosse : rendue sans être gardée
+        Object old = entries.put(key, value);
+        if (old != null)
+            bytes -= size(old);
+        bytes += size;
+        for (Iterator<Object> it = entries.values().iterator(); bytes > maxBytes && it.hasNext();) {
+            bytes -= size(it.next());
+            it.remove();
+        }
+    }
+
+    private static long size(Object entry) {
+        if (entry instanceof Generation gen)
+            return gen.bytes();
+        Compiled c = (Compiled) entry;
+        return ENTRY_BYTES + 4L * (c.g.rhs.length + c.axiom.length) + 16L * c.g.size();
+    }
+
+    /** Mémoire occupée, en octets (estimation). */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /** Nombre d'entrées : grammaires compilées et générations. */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Empreinte SHA-256 (hexadécimal) de la forme canonique de la
+     * spécification : clés triées, nombres sans zéros superflus, clé
+     * « seed » de premier niveau exclue.
+     */
+    public static String hash(JSONObject spec) {
+        StringBuilder out = new StringBuilder();
+        canonical(spec, out, true);
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(out.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 est garanti par la plateforme
+        }
+    }
+
+    private static void canonical(Object value, StringBuilder out, boolean top) {
+        if (value instanceof JSONObject obj) {
+            List<String> keys = new ArrayList<>(obj.keySet());
+            keys.sort(null);
+            out.append('{');
+            for (String k : keys) {
+                if (top && k.equals("seed"))
+                    continue; // coordonnée à part
+                if (out.charAt(out.length() - 1) != '{')
+                    out.append(',');
+                out.append(JSONObject.quote(k)).append(':');
+                canonical(obj.get(k), out, false);
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray array) {
+            out.append('[');
+            for (int i = 0; i < array.length(); ++i) {
+                if (i > 0)
+                    out.append(',');
+                canonical(array.get(i), out, false);
+            }
+            out.append(']');
+        } else if (value instanceof Number num) {
+            out.append(new BigDecimal(num.toString()).stripTrailingZeros().toPlainString());
+        } else if (value instanceof String s) {
+            out.append(JSONObject.quote(s));
+        } else {
+            out.append(value); // booléen, JSONObject.NULL
+        }
+    }
+
+    /**
+     * Génération développée : ordinaux de la grammaire compilée, en
+     * tableau compact, et bounding-box du tracé depuis l'état de départ de
+     * la spécification. Immuable.
+     */
+    public static final class Generation {
+        private final Compiled c;
+        private final int n;
+        private final byte[] data;
+        private final int width, length;
+        private final Rectangle2D bounds;
+
+        private Generation(Compiled c, int n, byte[] data, int width, int length) {
+            this.c = c;
+            this.n = n;
+            this.data = data;
+            this.width = width;
+            this.length = length;
+            FakeTurtle probe = new FakeTurtle(new Point2D.Double(0, 0), 0);
+            init(probe);
+            this.bounds = run(probe);
+        }
+
+        /** Nombre de réécritures. */
+        public int depth() {
+            return n;
+        }
+
+        /** Nombre de symboles. */
+        public int length() {
+            return length;
+        }
+
+        /** Bounding-box du tracé, depuis l'état de départ de la spécification. */
+        public Rectangle2D bounds() {
+            return (Rectangle2D) bounds.clone();
+        }
+
+        /** Symboles de la génération, dans l'ordre. */
+        public Iterator<Symbol> symbols() {
+            return new Iterator<Symbol>() {
+                private int i;
+
+                @Override
+                public boolean hasNext() {
+                    return i < length;
+                }
+
+                @Override
+                public Symbol next() {
+                    if (i == length)
+                        throw new NoSuchElementException();
+                    return c.g.symbols[ordinal(data, width, i++)];
+                }
+            };
+        }
+
+        /** Unités et état de départ de la section « parameters » de la spécification. */
+        public void init(Turtle turtle) {
+            LSystem.initTurtle(c.spec, turtle);
+        }
+
+        /**
+         * Exécute la génération sur la tortue, depuis son état courant,
+         * comme {@link LSystem#tell(Turtle, Iterator, int)}.
+         *
+         * @return bounding-box des positions visitées
+         */
+        public Rectangle2D tell(Turtle turtle) {
+            return run(turtle);
+        }
+
+        private Rectangle2D run(Turtle turtle) {
+            double x0 = turtle.getX(), y0 = turtle.getY(); // inclure le départ
+            double[] box = { x0, y0, x0, y0 };
+            byte[] ops = new byte[Math.min(CHUNK, Math.max(1, length))];
+            for (int from = 0; from < length; from += ops.length) {
+                int k = Math.min(ops.length, length - from);
+                for (int i = 0; i < k; ++i)
+                    ops[i] = c.g.op[ordinal(data, width, from + i)];
+                turtle.execute(ops, 0, k, box);
+            }
+            return new Rectangle2D.Double(box[0], box[1], box[2] - box[0], box[3] - box[1]);
+        }
+
+        long bytes() {
+            return ENTRY_BYTES + data.length;
+        }
+    }
+
+    /** Pour les tests : la génération est-elle gardée ? */
+    synchronized boolean contains(JSONObject spec, int n, long seed) {
+        return entries.containsKey(new Key(hash(spec), n, seed));
+    }
+}
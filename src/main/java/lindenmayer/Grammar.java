@@ -0,0 +1,184 @@
+package lindenmayer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Grammaire compilée d'un {@link LSystem} : chaque symbole interné est
+ * désigné par son ordinal dense, et toutes les tables sont des tableaux
+ * indexés par cet ordinal. Les membres droits des règles sont des tranches
+ * d'un seul tableau d'ordinaux.
+ *
+ * <p>Pour l'ordinal {@code s}, les alternatives sont
+ * {@code altStart[s] .. altStart[s]+altCount[s]-1} ; l'alternative
+ * {@code a} occupe {@code rhs[rhsStart[a] .. rhsStart[a+1]-1]}.
+ * Un symbole sans règle a {@code altCount[s] == 0}.
+ *
+ * <p>Instantané immuable : {@link LSystem} en reconstruit un après toute
+ * modification de la grammaire. Seuls les caches {@link #macros} et
+ * {@link #instances} s'y ajoutent.
+ */
+final class Grammar {
+    /** ordinal -> symbole */
+    final Symbol[] symbols;
+    /** ordinal -> code d'action ({@link TurtleOp}) */
+    final byte[] op;
+    /** ordinal -> première alternative */
+    final int[] altStart;
+    /** ordinal -> nombre d'alternatives (0 si terminal) */
+    final int[] altCount;
+    /** alternative -> début de sa tranche dans {@link #rhs} (une case de plus) */
+    final int[] rhsStart;
+    /** membres droits concaténés, en ordinaux */
+    final int[] rhs;
+    /** code d'action de chaque case de {@link #rhs}, pour l'exécution en bloc */
+    final byte[] rhsOp;
+    /**
+     * case de {@link #rhs} -> fin de la suite de symboles sans règle qui y
+     * commence, dans le même membre droit
+     */
+    final int[] terminalEnd;
+    /**
+     * case de {@link #rhs} -> son indice dans le membre droit écrit par
+     * l'utilisateur, qui fait la clé de chemin du mode compteur
+     * ({@link AbstractLSystem#childKey}) ; diffère de l'indice réel
+     * après {@link GrammarOptimizer}
+     */
+    final int[] rhsKey;
+    /** vrai si aucun symbole n'a plus d'une alternative */
+    final boolean deterministic;
+    /** cache des macro-ops par géométrie de tortue, rempli à l'usage ({@link MacroOps#of}) */
+    final Map<MacroOps.Geometry, MacroOps> macros = new ConcurrentHashMap<>();
+    /** cache d'instances géométriques, créé à l'usage ({@link InstanceCache#of}) */
+    volatile InstanceCache instances;
+
+    Grammar(List<Symbol> symbols, byte[] op, List<List<int[]>> rules) {
+        this(symbols.toArray(new Symbol[0]), Arrays.copyOf(op, symbols.size()), flatten(symbols.size(), rules), null);
+    }
+
+    /**
+     * Grammaire déjà à plat : {@code tables} = {altStart, altCount,
+     * rhsStart, rhs}.
+     *
+     * @param rhsKey indice d'origine de chaque case dans son membre droit
+     *               (voir {@link #rhsKey}) ; null pour l'indice réel
+     */
+    Grammar(Symbol[] symbols, byte[] op, int[][] tables, int[] rhsKey) {
+        this.symbols = symbols;
+        this.op = op;
+        this.altStart = tables[0];
+        this.altCount = tables[1];
+        this.rhsStart = tables[2];
+        this.rhs = tables[3];
+
+        boolean det = true;
+        for (int count : altCount)
+            det &= count <= 1;
+        this.deterministic = det;
+
+        int nAlt = rhsStart.length - 1, nRhs = rhs.length;
+        this.rhsOp = new byte[nRhs];
+        this.terminalEnd = new int[nRhs];
+        this.rhsKey = rhsKey != null ? rhsKey : new int[nRhs];
+        for (int alt = 0; alt < nAlt; ++alt) {
+            int end = rhsStart[alt + 1];
+            for (int i = end - 1; i >= rhsStart[alt]; --i) {
+                rhsOp[i] = op[rhs[i]];
+                if (altCount[rhs[i]] > 0)
+                    end = i; // non-terminal : la suite s'arrête juste avant
+                terminalEnd[i] = end;
+                if (rhsKey == null)
+                    this.rhsKey[i] = i - rhsStart[alt];
+            }
+        }
+    }
+
+    /** Règles par symbole -> {altStart, altCount, rhsStart, rhs}. */
+    private static int[][] flatten(int size, List<List<int[]>> rules) {
+        int[] altStart = new int[size], altCount = new int[size];
+        int nAlt = 0, nRhs = 0;
+        for (List<int[]> alternatives : rules) {
+            nAlt += alternatives.size();
+            for (int[] r : alternatives)
+                nRhs += r.length;
+        }
+        int[] rhsStart = new int[nAlt + 1], rhs = new int[nRhs];
+        int a = 0, k = 0;
+        for (int s = 0; s < size; ++s) {
+            List<int[]> alternatives = rules.get(s);
+            altStart[s] = a;
+            altCount[s] = alternatives.size();
+            for (int[] r : alternatives) {
+                rhsStart[a++] = k;
+                System.arraycopy(r, 0, rhs, k, r.length);
+                k += r.length;
+            }
+        }
+        rhsStart[a] = k;
+        return new int[][] { altStart, altCount, rhsStart, rhs };
+    }
+
+    /** Nombre de symboles de l'alphabet. */
+    int size() {
+        return symbols.length;
+    }
+
+    /**
+     * Longueurs des sous-dérivations : l'entrée {@code [level*size()+s]} est
+     * le nombre de symboles obtenus après {@code level} réécritures de
+     * {@code s} (donc de symboles exécutés), pour {@code level = 0..n}.
+     * Les règles à plusieurs alternatives sont comptées par leur première.
+     *
+     * @return table saturée à {@link Long#MAX_VALUE}
+     */
+    long[] lengths(int n) {
+        int size = size();
+        long[] len = new long[(n + 1) * size];
+        Arrays.fill(len, 0, size, 1);
+        for (int level = 1; level <= n; ++level) {
+            for (int s = 0; s < size; ++s) {
+                long w = 1;
+                if (altCount[s] > 0) {
+                    int a = altStart[s];
+                    w = 0;
+                    for (int i = rhsStart[a]; i < rhsStart[a + 1]; ++i)
+                        w = saturatedAdd(w, len[(level - 1) * size + rhs[i]]);
+                }
+                len[level * size + s] = w;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Vrai si les symboles push/pop n'ont pas de règle et si les crochets
+     * de chaque membre droit sont équilibrés : toute sous-dérivation rend
+     * alors la pile de la tortue comme elle l'a trouvée.
+     */
+    boolean bracketsBalanced() {
+        for (int s = 0; s < size(); ++s) {
+            if ((op[s] == TurtleOp.PUSH || op[s] == TurtleOp.POP) && altCount[s] > 0)
+                return false;
+        }
+        for (int a = 0; a + 1 < rhsStart.length; ++a) {
+            int depth = 0;
+            for (int i = rhsStart[a]; i < rhsStart[a + 1]; ++i) {
+                if (op[rhs[i]] == TurtleOp.PUSH)
+                    ++depth;
+                else if (op[rhs[i]] == TurtleOp.POP && --depth < 0)
+                    return false;
+            }
+            if (depth != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /** Somme saturée à {@link Long#MAX_VALUE} (arguments positifs). */
+    static long saturatedAdd(long a, long b) {
+        long r = a + b;
+        return r < 0 ? Long.MAX_VALUE : r;
+    }
+}
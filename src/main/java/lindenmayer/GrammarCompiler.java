@@ -0,0 +1,392 @@
+package lindenmayer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compilation d'une grammaire déterministe en une classe cachée
+ * ({@link MethodHandles.Lookup#defineHiddenClass}) écrite directement en
+ * bytecode : une méthode statique par symbole à règle,
+ * {@code s<k>(Turtle, double[] box, int d)}, qui au niveau 0 exécute
+ * l'action du symbole et sinon appelle, dans l'ordre du membre droit, la
+ * méthode de chaque non-terminal au niveau d-1 et directement la méthode
+ * de la tortue de chaque terminal. Ni table, ni itérateur, ni pile de
+ * cadres : la récursion est celle de la JVM, de profondeur n.
+ *
+ * <p>La classe est réservée aux grammaires déterministes ; elle ne tire
+ * aucun nombre aléatoire.
+ */
+final class GrammarCompiler {
+    /** Exécution d'un symbole de départ ; une instance par grammaire. */
+    interface Specialized {
+        /**
+         * Exécute sur la tortue le sous-arbre du symbole {@code id} après
+         * {@code level} réécritures.
+         *
+         * @param box {minX, minY, maxX, maxY}, élargi après chaque pas ou
+         *            pop ; null pour ne pas suivre le bounding-box
+         */
+        void run(Turtle turtle, int id, int level, double[] box);
+    }
+
+    /** Au-delà, la récursion de la JVM pourrait déborder : Expander. */
+    static final int MAX_LEVEL = 1000;
+
+    private static final int MAX_CODE = 65535;
+    private static final String TURTLE = "lindenmayer/Turtle";
+    private static final String SELF = "lindenmayer/GrammarCompiler";
+    private static final String SELF_COMPILED = "lindenmayer/GrammarCompiler$Compiled";
+    private static final String SYMBOL_DESC = "(Llindenmayer/Turtle;[DI)V";
+
+    private GrammarCompiler() {
+    }
+
+    /** Élargit le bounding-box à la position de la tortue (appelé par le code généré). */
+    static void track(Turtle turtle, double[] box) {
+        if (box != null)
+            TurtleOp.include(box, turtle.getX(), turtle.getY());
+    }
+
+    /**
+     * @return l'expandeur spécialisé, ou null si la grammaire est aléatoire
+     *         ou si un membre droit dépasse la taille d'une méthode
+     */
+    static Specialized compile(Grammar g) {
+        if (!g.deterministic || g.size() == 0)
+            return null;
+        byte[] bytes = new ClassWriter(g).bytes();
+        if (bytes == null)
+            return null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Specialized) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Compilation de la grammaire impossible", e);
+        }
+    }
+
+    /*-------------------------------- écriture du fichier class --------------*/
+
+    private static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_STATIC = 0x0008,
+            ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    private static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD = 0x19, ILOAD_2 = 0x1c, ILOAD_3 = 0x1d,
+            ICONST_1 = 0x04, BIPUSH = 0x10, ISUB = 0x64, IFNE = 0x9a, TABLESWITCH = 0xaa, RETURN = 0xb1,
+            INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9;
+
+    /** Un fichier class minimal (version 61), réservoir de constantes compris. */
+    private static final class ClassWriter {
+        private final Grammar g;
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final DataOutputStream cp = new DataOutputStream(pool);
+        private final Map<String, Integer> constants = new HashMap<>();
+        private int poolSize = 1;
+
+        ClassWriter(Grammar g) {
+            this.g = g;
+        }
+
+        /** Octets de la classe, ou null si une méthode serait trop longue. */
+        byte[] bytes() {
+            try {
+                int thisClass = classRef(SELF_COMPILED);
+                int superClass = classRef("java/lang/Object");
+                int iface = classRef("lindenmayer/GrammarCompiler$Specialized");
+                int code = utf8("Code"), stackMap = utf8("StackMapTable");
+
+                ByteArrayOutputStream methods = new ByteArrayOutputStream();
+                DataOutputStream m = new DataOutputStream(methods);
+                int count = 0;
+
+                Code init = new Code();
+                init.op(ALOAD_0).op(INVOKESPECIAL).u2(methodRef("java/lang/Object", "<init>", "()V")).op(RETURN);
+                method(m, ACC_PUBLIC, "<init>", "()V", init, 1, 1, code, stackMap);
+                ++count;
+
+                Code run = runMethod();
+                if (run == null)
+                    return null;
+                method(m, ACC_PUBLIC, "run", "(Llindenmayer/Turtle;II[D)V", run, 4, 5, code, stackMap);
+                ++count;
+
+                for (int s = 0; s < g.size(); ++s) {
+                    if (g.altCount[s] == 0)
+                        continue;
+                    Code body = symbolMethod(s);
+                    if (body == null)
+                        return null;
+                    method(m, ACC_PRIVATE | ACC_STATIC, "s" + s, SYMBOL_DESC, body, 4, 3, code, stackMap);
+                    ++count;
+                }
+
+                ByteArrayOutputStream file = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(file);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(61); // Java 17
+                out.writeShort(poolSize);
+                pool.writeTo(out);
+                out.writeShort(ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(iface);
+                out.writeShort(0); // aucun champ
+                out.writeShort(count);
+                methods.writeTo(out);
+                out.writeShort(0); // aucun attribut de classe
+                return file.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** run(turtle, id, level, box) : tableswitch sur id. */
+        private Code runMethod() {
+            int size = g.size();
+            Code c = new Code();
+            c.op(ILOAD_2).op(TABLESWITCH);
+            while (c.length() % 4 != 0)
+                c.op(0); // alignement des opérandes
+            int table = c.length();
+            c.u4(0).u4(0).u4(size - 1);
+            for (int s = 0; s < size; ++s)
+                c.u4(0);
+            for (int s = 0; s <= size; ++s) {
+                int target = c.length();
+                c.frame(target);
+                c.patch4(s == size ? table : table + 12 + 4 * s, target - 1); // depuis tableswitch ; s == size : défaut
+                if (s < size) {
+                    if (g.altCount[s] > 0)
+                        c.op(ALOAD_1).op(ALOAD).op(4).op(ILOAD_3)
+                                .op(INVOKESTATIC).u2(methodRef(SELF_COMPILED, "s" + s, SYMBOL_DESC));
+                    else
+                        action(c, g.op[s], ALOAD_1, 4);
+                }
+                c.op(RETURN);
+            }
+            return c.length() <= MAX_CODE ? c : null;
+        }
+
+        /** s<k>(turtle, box, d) : action au niveau 0, sinon le membre droit. */
+        private Code symbolMethod(int s) {
+            Code c = new Code();
+            c.op(ILOAD_2).op(IFNE).u2(0);
+            action(c, g.op[s], ALOAD_0, 1);
+            c.op(RETURN);
+            int target = c.length();
+            c.frame(target);
+            c.patch2(2, target - 1); // décalage depuis ifne (octet 1)
+            int a = g.altStart[s];
+            for (int i = g.rhsStart[a]; i < g.rhsStart[a + 1]; ++i) {
+                int child = g.rhs[i];
+                if (g.altCount[child] > 0)
+                    c.op(ALOAD_0).op(ALOAD_1).op(ILOAD_2).op(ICONST_1).op(ISUB)
+                            .op(INVOKESTATIC).u2(methodRef(SELF_COMPILED, "s" + child, SYMBOL_DESC));
+                else
+                    action(c, g.rhsOp[i], ALOAD_0, 1);
+                if (c.length() > MAX_CODE)
+                    return null;
+            }
+            c.op(RETURN);
+            return c;
+        }
+
+        /** Appel direct de la méthode de la tortue, puis suivi du bounding-box si elle bouge. */
+        private void action(Code c, byte op, int loadTurtle, int boxLocal) {
+            String name = switch (op) {
+                case TurtleOp.DRAW -> "draw";
+                case TurtleOp.MOVE -> "move";
+                case TurtleOp.TURN_L -> "turnL";
+                case TurtleOp.TURN_R -> "turnR";
+                case TurtleOp.PUSH -> "push";
+                case TurtleOp.POP -> "pop";
+                case TurtleOp.STAY -> "stay";
+                default -> null; // NONE, ou virage multiple
+            };
+            int turns = TurtleOp.turns(op);
+            if (name == null && turns != 0) { // turtle.turn(k)
+                c.op(loadTurtle).op(BIPUSH).op(turns)
+                        .op(INVOKEINTERFACE).u2(interfaceMethodRef(TURTLE, "turn", "(I)V")).op(2).op(0);
+                return;
+            }
+            if (name == null)
+                return;
+            c.op(loadTurtle).op(INVOKEINTERFACE).u2(interfaceMethodRef(TURTLE, name, "()V")).op(1).op(0);
+            if (op == TurtleOp.DRAW || op == TurtleOp.MOVE || op == TurtleOp.POP) {
+                c.op(loadTurtle);
+                if (boxLocal == 1)
+                    c.op(ALOAD_1);
+                else
+                    c.op(ALOAD).op(boxLocal);
+                c.op(INVOKESTATIC).u2(methodRef(SELF, "track", "(Llindenmayer/Turtle;[D)V"));
+            }
+        }
+
+        private void method(DataOutputStream m, int flags, String name, String desc, Code body,
+                int maxStack, int maxLocals, int code, int stackMap) throws IOException {
+            m.writeShort(flags);
+            m.writeShort(utf8(name));
+            m.writeShort(utf8(desc));
+            byte[] frames = body.frames();
+            m.writeShort(1); // un attribut : Code
+            m.writeShort(code);
+            int attrs = frames == null ? 0 : 1;
+            m.writeInt(2 + 2 + 4 + body.length() + 2 + 2 + (frames == null ? 0 : 6 + frames.length));
+            m.writeShort(maxStack);
+            m.writeShort(maxLocals);
+            m.writeInt(body.length());
+            body.writeTo(m);
+            m.writeShort(0); // aucune exception
+            m.writeShort(attrs);
+            if (frames != null) {
+                m.writeShort(stackMap);
+                m.writeInt(frames.length);
+                m.write(frames);
+            }
+        }
+
+        /*---------------- réservoir de constantes (dédoublonné) ----------------*/
+
+        private int utf8(String s) throws IOException {
+            Integer i = constants.get("U" + s);
+            if (i != null)
+                return i;
+            cp.writeByte(1);
+            cp.writeUTF(s);
+            constants.put("U" + s, poolSize);
+            return poolSize++;
+        }
+
+        private int classRef(String name) throws IOException {
+            Integer i = constants.get("C" + name);
+            if (i != null)
+                return i;
+            int n = utf8(name);
+            cp.writeByte(7);
+            cp.writeShort(n);
+            constants.put("C" + name, poolSize);
+            return poolSize++;
+        }
+
+        private int nameAndType(String name, String desc) throws IOException {
+            String key = "N" + name + ":" + desc;
+            Integer i = constants.get(key);
+            if (i != null)
+                return i;
+            int n = utf8(name), d = utf8(desc);
+            cp.writeByte(12);
+            cp.writeShort(n);
+            cp.writeShort(d);
+            constants.put(key, poolSize);
+            return poolSize++;
+        }
+
+        private int methodRef(String owner, String name, String desc) {
+            return member(10, owner, name, desc);
+        }
+
+        private int interfaceMethodRef(String owner, String name, String desc) {
+            return member(11, owner, name, desc);
+        }
+
+        private int member(int tag, String owner, String name, String desc) {
+            try {
+                String key = tag + owner + "." + name + desc;
+                Integer i = constants.get(key);
+                if (i != null)
+                    return i;
+                int c = classRef(owner), nt = nameAndType(name, desc);
+                cp.writeByte(tag);
+                cp.writeShort(c);
+                cp.writeShort(nt);
+                constants.put(key, poolSize);
+                return poolSize++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Corps d'une méthode. Toutes les cibles de saut ont les variables
+     * locales d'entrée et une pile vide : des « same_frame » suffisent.
+     */
+    private static final class Code {
+        private byte[] buf = new byte[256];
+        private int count;
+        private final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        private int frameCount, lastFrame = -1;
+
+        Code op(int b) {
+            if (count == buf.length)
+                buf = Arrays.copyOf(buf, 2 * count);
+            buf[count++] = (byte) b;
+            return this;
+        }
+
+        Code u2(int v) {
+            return op(v >>> 8).op(v);
+        }
+
+        Code u4(int v) {
+            return u2(v >>> 16).u2(v);
+        }
+
+        int length() {
+            return count;
+        }
+
+        /** Écrit {@code value} sur 2 octets à la position {@code at}. */
+        void patch2(int at, int value) {
+            buf[at] = (byte) (value >>> 8);
+            buf[at + 1] = (byte) value;
+        }
+
+        /** Écrit {@code value} sur 4 octets à la position {@code at}. */
+        void patch4(int at, int value) {
+            patch2(at, value >>> 16);
+            patch2(at + 2, value);
+        }
+
+        /** Cadre « same » à la position {@code offset}, dans l'ordre croissant. */
+        void frame(int offset) {
+            int delta = lastFrame < 0 ? offset : offset - lastFrame - 1;
+            if (delta < 64) {
+                frames.write(delta); // same_frame
+            } else {
+                frames.write(251); // same_frame_extended
+                frames.write(delta >>> 8);
+                frames.write(delta & 0xff);
+            }
+            lastFrame = offset;
+            ++frameCount;
+        }
+
+        /** Contenu de l'attribut StackMapTable, ou null s'il n'y a aucun cadre. */
+        byte[] frames() {
+            if (frameCount == 0)
+                return null;
+            byte[] f = frames.toByteArray();
+            byte[] out = new byte[2 + f.length];
+            out[0] = (byte) (frameCount >>> 8);
+            out[1] = (byte) frameCount;
+            System.arraycopy(f, 0, out, 2, f.length);
+            return out;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.write(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package lindenmayer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Passe d'optimisation d'une {@link Grammar}, appliquée aux membres droits
+ * avant l'exécution :
+ * <ul>
+ * <li>les symboles sans règle dont l'action est nulle ou {@code stay} sont
+ * retirés ;</li>
+ * <li>une suite de virages sans règle devient un seul virage multiple
+ * ({@link TurtleOp#turn(int)}) : {@code +-} s'annule, {@code ++++} compte
+ * pour un ;</li>
+ * <li>les symboles de même action dont les règles sont identiques (à
+ * équivalence près des symboles qu'elles produisent) sont confondus en un
+ * seul représentant, le plus petit ordinal.</li>
+ * </ul>
+ *
+ * <p>Seuls des symboles sans règle disparaissent : les non-terminaux
+ * restent, dans le même ordre et avec le même nombre d'alternatives, et
+ * gardent leur clé de chemin d'origine ({@link Grammar#rhsKey}). Les
+ * choix de règles sont donc ceux de la grammaire d'origine, tirage
+ * séquentiel comme mode compteur. Les ordinaux d'origine restent valides ;
+ * les virages multiples sont de nouveaux ordinaux, à la suite.
+ */
+final class GrammarOptimizer {
+    private final Grammar g;
+    /** virage multiple k -> ordinal ajouté */
+    private final Map<Integer, Integer> turnSymbols = new HashMap<>();
+    private final List<Symbol> extraSymbols = new ArrayList<>();
+    private final List<Byte> extraOps = new ArrayList<>();
+
+    private GrammarOptimizer(Grammar g) {
+        this.g = g;
+    }
+
+    /**
+     * @return la grammaire optimisée, ou {@code g} elle-même si la passe
+     *         n'y change rien
+     */
+    static Grammar optimize(Grammar g) {
+        return new GrammarOptimizer(g).run();
+    }
+
+    private Grammar run() {
+        int nAlt = g.rhsStart.length - 1;
+        int[] rhsStart = new int[nAlt + 1];
+        int[] rhs = new int[g.rhs.length], rhsKey = new int[g.rhs.length];
+        int k = 0;
+        boolean changed = false;
+        for (int a = 0; a < nAlt; ++a) {
+            rhsStart[a] = k;
+            int end = g.rhsStart[a + 1];
+            for (int i = g.rhsStart[a]; i < end;) {
+                int c = g.rhs[i];
+                if (!terminal(c) || TurtleOp.turns(g.op[c]) == 0) {
+                    if (!ignored(c)) {
+                        rhs[k] = c;
+                        rhsKey[k++] = g.rhsKey[i];
+                    }
+                    ++i;
+                    continue;
+                }
+                /* suite de virages, et de symboles ignorés entre eux */
+                int first = i, cells = 0, net = 0;
+                for (; i < end && terminal(g.rhs[i]) && (TurtleOp.turns(g.op[g.rhs[i]]) != 0 || ignored(g.rhs[i])); ++i) {
+                    net += TurtleOp.turns(g.op[g.rhs[i]]);
+                    ++cells;
+                }
+                if (cells == 1) { // virage seul : tel quel
+                    rhs[k] = c;
+                    rhsKey[k++] = g.rhsKey[first];
+                    continue;
+                }
+                while (net != 0) { // morceaux d'au plus MAX_TURNS, dans la place libérée
+                    int part = Math.max(-TurtleOp.MAX_TURNS, Math.min(TurtleOp.MAX_TURNS, net));
+                    rhs[k] = turnSymbol(part, c);
+                    rhsKey[k++] = g.rhsKey[first];
+                    net -= part;
+                }
+            }
+            changed |= k - rhsStart[a] != end - g.rhsStart[a];
+        }
+        rhsStart[nAlt] = k;
+
+        int size = g.size() + extraSymbols.size();
+        Symbol[] symbols = Arrays.copyOf(g.symbols, size);
+        byte[] op = Arrays.copyOf(g.op, size);
+        int[] altStart = Arrays.copyOf(g.altStart, size), altCount = Arrays.copyOf(g.altCount, size);
+        for (int s = g.size(); s < size; ++s) {
+            symbols[s] = extraSymbols.get(s - g.size());
+            op[s] = extraOps.get(s - g.size());
+            altStart[s] = nAlt; // sans règle
+        }
+        rhs = Arrays.copyOf(rhs, k);
+        rhsKey = Arrays.copyOf(rhsKey, k);
+
+        int[] rep = representatives(op, altStart, altCount, rhsStart, rhs, rhsKey);
+        for (int i = 0; i < k; ++i) {
+            changed |= rep[rhs[i]] != rhs[i];
+            rhs[i] = rep[rhs[i]];
+        }
+        if (!changed)
+            return g;
+        return new Grammar(symbols, op, new int[][] { altStart, altCount, rhsStart, rhs }, rhsKey);
+    }
+
+    private boolean terminal(int s) {
+        return g.altCount[s] == 0;
+    }
+
+    /** Symbole sans règle qui ne fait rien à la tortue. */
+    private boolean ignored(int s) {
+        return terminal(s) && (g.op[s] == TurtleOp.NONE || g.op[s] == TurtleOp.STAY);
+    }
+
+    /** Ordinal du virage de {@code k} angles ; {@code like} lui prête son Symbol. */
+    private int turnSymbol(int k, int like) {
+        return turnSymbols.computeIfAbsent(k, t -> {
+            extraSymbols.add(g.symbols[like]);
+            extraOps.add(TurtleOp.turn(t));
+            return g.size() + extraSymbols.size() - 1;
+        });
+    }
+
+    /**
+     * Plus petit ordinal équivalent à chaque symbole, par raffinement de
+     * partition : au départ, même action et même nombre d'alternatives ;
+     * puis on sépare les symboles dont une alternative diffère par la
+     * longueur, la classe d'un symbole produit ou, si la grammaire est
+     * aléatoire, la clé d'un non-terminal produit. Stable quand plus
+     * aucune classe ne se sépare.
+     */
+    private int[] representatives(byte[] op, int[] altStart, int[] altCount, int[] rhsStart, int[] rhs,
+            int[] rhsKey) {
+        int size = op.length;
+        int[] cls = new int[size];
+        int classes = refine(cls, s -> List.of((int) op[s], altCount[s]));
+        while (true) {
+            int[] prev = cls.clone();
+            int refined = refine(cls, s -> {
+                List<Integer> key = new ArrayList<>();
+                key.add(prev[s]);
+                for (int a = altStart[s]; a < altStart[s] + altCount[s]; ++a) {
+                    key.add(rhsStart[a + 1] - rhsStart[a]);
+                    for (int i = rhsStart[a]; i < rhsStart[a + 1]; ++i) {
+                        key.add(prev[rhs[i]]);
+                        if (!g.deterministic && altCount[rhs[i]] > 0)
+                            key.add(rhsKey[i]);
+                    }
+                }
+                return key;
+            });
+            if (refined == classes)
+                break;
+            classes = refined;
+        }
+        int[] first = new int[classes], rep = new int[size];
+        Arrays.fill(first, -1);
+        for (int s = 0; s < size; ++s) {
+            if (first[cls[s]] < 0)
+                first[cls[s]] = s;
+            rep[s] = first[cls[s]];
+        }
+        return rep;
+    }
+
+    private interface Signature {
+        List<Integer> of(int s);
+    }
+
+    /** Numérote les classes de signatures égales dans {@code cls} ; rend leur nombre. */
+    private static int refine(int[] cls, Signature signature) {
+        Map<List<Integer>, Integer> ids = new HashMap<>();
+        for (int s = 0; s < cls.length; ++s) {
+            List<Integer> key = signature.of(s);
+            Integer id = ids.putIfAbsent(key, ids.size());
+            cls[s] = id == null ? ids.size() - 1 : id;
+        }
+        return ids.size();
+    }
+}
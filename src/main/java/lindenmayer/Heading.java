@@ -0,0 +1,172 @@
+package lindenmayer;
+
+/**
+ * Orientation d'une tortue et vecteur d'un pas.
+ *
+ * <p>Quand l'angle unitaire divise 360 (22,5, 60, 90...), l'orientation est
+ * un nombre entier de virages depuis l'angle de départ : les m = 360/unité
+ * vecteurs (dx, dy) d'un pas sont calculés une fois, et un pas ne coûte plus
+ * ni conversion en radians, ni cosinus, ni sinus. L'angle rendu vaut
+ * départ + virages × unité, sans la dérive d'une somme de virages à grande
+ * profondeur. Sinon, l'angle est un double qu'on incrémente, comme avant.
+ */
+final class Heading {
+    /** Au-delà de ce nombre d'orientations, pas de table. */
+    static final int MAX_HEADINGS = 1 << 12;
+
+    private double step, unit;
+    /** angle courant, hors mode table */
+    private double angle;
+
+    /* mode table : angle = base + turns * unit, vecteur dx[index], dy[index] */
+    private double base;
+    private long turns;
+    private int index;
+    private double[] dx, dy; // null hors mode table
+
+    Heading(double angle, double step, double unit) {
+        this.angle = angle;
+        setUnits(step, unit);
+    }
+
+    /**
+     * Nombre d'orientations distinctes si {@code unit} divise 360, sinon 0.
+     */
+    static int headings(double unit) {
+        if (!(unit > 0) || Double.isInfinite(unit))
+            return 0;
+        double m = 360 / unit;
+        long r = Math.round(m);
+        return r >= 1 && r <= MAX_HEADINGS && Math.abs(m - r) < 1e-9 ? (int) r : 0;
+    }
+
+    void setUnits(double step, double unit) {
+        double a = angle();
+        this.step = step;
+        this.unit = unit;
+        build(a);
+    }
+
+    double step() {
+        return step;
+    }
+
+    double unit() {
+        return unit;
+    }
+
+    /** Vrai si l'orientation est indexée dans une table de vecteurs. */
+    boolean tabulated() {
+        return dx != null;
+    }
+
+    /** Angle de l'orientation 0 de la table (mode table seulement). */
+    double base() {
+        return base;
+    }
+
+    /** Orientation courante dans la table (mode table seulement). */
+    int index() {
+        return index;
+    }
+
+    /** Virages depuis l'orientation 0 de la table (mode table seulement). */
+    long turns() {
+        return turns;
+    }
+
+    /** Vecteurs d'un pas par orientation, à ne pas modifier (mode table seulement). */
+    double[] tableX() {
+        return dx;
+    }
+
+    double[] tableY() {
+        return dy;
+    }
+
+    /** (Re)construit la table pour un angle de départ {@code a}, s'il y a lieu. */
+    private void build(double a) {
+        angle = a;
+        int m = headings(unit);
+        if (m == 0) {
+            dx = dy = null;
+            return;
+        }
+        base = a;
+        turns = 0;
+        index = 0;
+        dx = new double[m];
+        dy = new double[m];
+        for (int k = 0; k < m; ++k) {
+            double degrees = (base + k * unit) % 360; // même vecteur pour deux angles équivalents
+            double radians = Math.toRadians(degrees < 0 ? degrees + 360 : degrees);
+            dx[k] = step * Math.cos(radians);
+            dy[k] = step * Math.sin(radians);
+        }
+    }
+
+    double angle() {
+        return dx == null ? angle : base + turns * unit;
+    }
+
+    /** Fixe l'angle (init, pop) ; la table est gardée si l'angle y tombe. */
+    void set(double a) {
+        if (dx == null) {
+            angle = a;
+            return;
+        }
+        double r = (a - base) / unit, t = Math.rint(r);
+        if (Math.abs(r - t) < 1e-9 && Math.abs(t) < 0x1p52) {
+            turns = (long) t;
+            index = (int) Math.floorMod(turns, (long) dx.length);
+        } else {
+            build(a); // nouveau départ hors de la grille : nouvelle table
+        }
+    }
+
+    /** Virage à gauche d'un angle unitaire. */
+    void turnL() {
+        if (dx == null) {
+            angle += unit;
+        } else {
+            ++turns;
+            index = index + 1 == dx.length ? 0 : index + 1;
+        }
+    }
+
+    /** Virage à droite d'un angle unitaire. */
+    void turnR() {
+        if (dx == null) {
+            angle -= unit;
+        } else {
+            --turns;
+            index = index == 0 ? dx.length - 1 : index - 1;
+        }
+    }
+
+    /**
+     * Virage de {@code k} angles unitaires (à gauche si k > 0) : d'un coup
+     * en mode table, sinon comme k virages successifs, à l'arrondi près.
+     */
+    void turn(int k) {
+        if (dx == null) {
+            for (; k > 0; --k)
+                angle += unit;
+            for (; k < 0; ++k)
+                angle -= unit;
+        } else {
+            turns += k;
+            index = Math.floorMod(index + k, dx.length);
+        }
+    }
+
+    /** Abscisse d'un pas dans l'orientation courante. */
+    double dx() {
+        return dx == null ? step * Math.cos(Math.toRadians(angle)) : dx[index];
+    }
+
+    /** Ordonnée d'un pas dans l'orientation courante. */
+    double dy() {
+        return dy == null ? step * Math.sin(Math.toRadians(angle)) : dy[index];
+    }
+}
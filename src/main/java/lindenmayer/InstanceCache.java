@@ -0,0 +1,156 @@
+package lindenmayer;
+
+import java.awt.geom.Point2D;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache d'instances géométriques d'une grammaire déterministe : le
+ * sous-arbre d'un symbole à une profondeur donnée produit toujours les
+ * mêmes segments, à une translation près, pour une même orientation de
+ * départ. Chaque sous-arbre (symbole, profondeur, orientation) est
+ * enregistré une fois dans un repère local ({@link MacroOps.Macro}), puis
+ * posé par {@link RecordingTurtle#stamp(MacroOps.Macro, double[])} au lieu
+ * d'être redéveloppé.
+ *
+ * <p>Un sous-arbre n'est enregistré qu'à sa deuxième rencontre, et
+ * seulement s'il est assez gros pour valoir plus qu'une suite de macro-ops,
+ * et assez petit pour le budget. La mémoire est bornée en octets
+ * ({@link #BUDGET} par défaut) : au-delà, les instances les moins
+ * récemment utilisées sont évincées (LRU). Partagé par les tâches du mode
+ * parallèle : accès synchronisés, enregistrement hors verrou.
+ *
+ * <p>Conditions ({@link #of(Grammar)}) : grammaire déterministe, et
+ * crochets équilibrés ({@link Grammar#bracketsBalanced()}) pour qu'un
+ * sous-arbre ne dépile jamais un état d'avant lui.
+ */
+final class InstanceCache {
+    /** Mémoire des instances par défaut, en octets. */
+    static final long BUDGET = 64L << 20;
+    /** En dessous (symboles exécutés), les macro-ops suffisent. */
+    static final long MIN_WORK = 64;
+
+    /** Taille estimée d'un segment enregistré (4 doubles et un booléen). */
+    private static final long SEGMENT_BYTES = 33;
+    /** Taille d'une entrée, hors segments. */
+    private static final long ENTRY_BYTES = 96;
+
+    private record Key(MacroOps ops, int symbol, int level, int index) {
+    }
+
+    /** Marque d'un sous-arbre vu une fois, pas encore enregistré. */
+    private static final MacroOps.Macro SEEN = new MacroOps.Macro(null, 0, 0, 0, null);
+
+    private final Grammar g;
+    private final long budget;
+    private final LinkedHashMap<Key, MacroOps.Macro> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    /** symboles exécutés par (niveau, symbole), voir Grammar#lengths ; agrandie au besoin */
+    private volatile long[] work = new long[0];
+
+    /** @param budget mémoire des instances, en octets */
+    InstanceCache(Grammar g, long budget) {
+        this.g = g;
+        this.budget = budget;
+    }
+
+    /** Cache d'instances de {@code g}, ou null si la grammaire ne s'y prête pas. */
+    static InstanceCache of(Grammar g) {
+        if (!g.deterministic || !g.bracketsBalanced())
+            return null;
+        InstanceCache cache = g.instances;
+        if (cache == null) {
+            synchronized (g) {
+                if (g.instances == null)
+                    g.instances = new InstanceCache(g, BUDGET);
+                cache = g.instances;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Pose sur la tortue le sous-arbre de {@code id} après {@code level}
+     * réécritures, depuis le cache ; l'enregistre d'abord s'il le mérite.
+     *
+     * @param ops macro-ops de la géométrie de la tortue
+     * @return faux, sans rien faire, si le sous-arbre est à développer
+     *         normalement
+     */
+    boolean stamp(RecordingTurtle turtle, MacroOps ops, int id, int level, double[] box) {
+        long w = work(id, level);
+        if (w < MIN_WORK || w > budget / 4 / SEGMENT_BYTES)
+            return false; // sans verrou : le cas courant, petit sous-arbre
+        Key key = new Key(ops, id, level, turtle.headingIndex());
+        MacroOps.Macro m;
+        synchronized (this) {
+            m = entries.get(key);
+            if (m == null) {
+                put(key, SEEN); // première rencontre : développé normalement
+                return false;
+            }
+        }
+        if (m == SEEN) { // deuxième rencontre : on l'enregistre
+            m = record(ops, id, level, key.index);
+            synchronized (this) {
+                put(key, m);
+            }
+        }
+        turtle.stamp(m, box);
+        return true;
+    }
+
+    /** Développe le sous-arbre sur une tortue locale, partie de l'origine. */
+    private MacroOps.Macro record(MacroOps ops, int id, int level, int index) {
+        MacroOps.Geometry geometry = ops.geometry();
+        RecordingTurtle local = new RecordingTurtle(new Point2D.Double(0, 0), geometry.base(),
+                new SegmentBuffer((int) Math.min(work(id, level), 1 << 16)));
+        local.setUnits(geometry.step(), geometry.unit()); // même table que la tortue
+        local.setFused(true);
+        local.turn(index);
+        double[] visited = { 0, 0, 0, 0 }; // le départ est déjà une position visitée
+        new Expander(g, null).expand(local, id, level, AbstractLSystem.ROOT_KEY, visited);
+        return new MacroOps.Macro(local.segments(), local.getX(), local.getY(), local.headingTurns() - index,
+                visited);
+    }
+
+    private long work(int id, int level) {
+        long[] w = work;
+        int i = level * g.size() + id;
+        if (i >= w.length) { // table recalculée pour un niveau plus profond, rare
+            synchronized (this) {
+                w = work;
+                if (i >= w.length)
+                    work = w = g.lengths(Math.max(level, 2 * (w.length / g.size())));
+            }
+        }
+        return w[i];
+    }
+
+    /** Ajoute ou remplace une entrée, puis évince les plus anciennes au-delà du budget. */
+    private void put(Key key, MacroOps.Macro m) {
+        MacroOps.Macro old = entries.put(key, m);
+        if (old != null)
+            bytes -= size(old);
+        bytes += size(m);
+        for (Iterator<MacroOps.Macro> it = entries.values().iterator(); bytes > budget && it.hasNext();) {
+            bytes -= size(it.next());
+            it.remove();
+        }
+    }
+
+    private static long size(MacroOps.Macro m) {
+        return ENTRY_BYTES + (m.local == null ? 0 : m.local.size() * SEGMENT_BYTES);
+    }
+
+    /** Mémoire occupée, en octets (estimation). */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    /** Vrai si l'instance (id, level, index) est enregistrée. */
+    synchronized boolean contains(MacroOps ops, int id, int level, int index) {
+        MacroOps.Macro m = entries.get(new Key(ops, id, level, index));
+        return m != null && m != SEEN;
+    }
+}
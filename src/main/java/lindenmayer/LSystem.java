@@ -2,12 +2,17 @@ package lindenmayer;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.function.Consumer;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.Point2D;
 
@@ -25,12 +30,32 @@ public class LSystem extends AbstractLSystem{
     /** Interne: caractère -> instance unique de Symbol */
     private final Map<Character, Symbol> pool = new HashMap<>();
 
-    /** Interne: symbol -> actions Turtle */
-    private final Map<Symbol, Consumer<Turtle>> actions = new HashMap<>();
+    /** Interne: ordinal -> instance unique de Symbol */
+    private final List<Symbol> symbols = new ArrayList<>();
 
-    /** Interne : règles de réécriture */
+    /** Interne: ordinal -> action Turtle (code {@link TurtleOp}) */
+    private byte[] ops = new byte[0];
 
-    private final Map<Symbol, List<List<Symbol>>> rules = new HashMap<>();
+    /** Interne : ordinal -> règles de réécriture (membres droits en ordinaux) */
+    private final List<List<int[]>> rules = new ArrayList<>();
+
+    /** Grammaire compilée en tableaux ; null après toute modification */
+    private Grammar compiled;
+
+    /** Mode parallèle de tell (voir setParallel) */
+    private boolean parallel;
+    /** Expansion sur un autre fil (voir setPipelined) */
+    private boolean pipelined;
+
+    /** Grammaire d'exécution (GrammarOptimizer) de la grammaire optimizedFrom */
+    private Grammar optimized;
+    private Grammar optimizedFrom;
+    /** Optimisation de la grammaire d'exécution (voir setOptimized) */
+    private boolean optimize = true;
+
+    /** Classe cachée de compile(), valable pour la grammaire specializedFor */
+    private GrammarCompiler.Specialized specialized;
+    private Grammar specializedFor;
 
     /**Axiome courant (liste immuable) */
     private List<Symbol> axiom = List.of();
@@ -43,7 +68,17 @@ public class LSystem extends AbstractLSystem{
 
     /** Retourne l'instance unique pour le caractère {@code c}. */
     private Symbol intern(char c) {
-        return pool.computeIfAbsent(c, Symbol::new);
+        Symbol sym = pool.get(c);
+        if (sym == null) { // nouvel ordinal dense
+            sym = new Symbol(c, symbols.size());
+            pool.put(c, sym);
+            symbols.add(sym);
+            rules.add(new ArrayList<>());
+            ops = Arrays.copyOf(ops, symbols.size());
+            ops[sym.ordinal] = TurtleOp.NONE;
+            compiled = null;
+        }
+        return sym;
     }
 
     /** Convertit une chaîne en liste de Symbol déjà internés. */
@@ -53,6 +88,64 @@ public class LSystem extends AbstractLSystem{
         return out;
     }
 
+    /** Ordinal de {@code sym} dans cet alphabet, ou -1 s'il est inconnu. */
+    private int ordinalOf(Symbol sym) {
+        int id = sym.ordinal;
+        if (id >= 0 && id < symbols.size() && symbols.get(id) == sym)
+            return id; // instance internée ici : cas courant
+        Symbol own = pool.get(sym.toString().charAt(0));
+        return own == null ? -1 : own.ordinal;
+    }
+
+    /** Grammaire compilée, reconstruite au besoin. */
+    Grammar grammar() {
+        Grammar g = compiled;
+        if (g == null)
+            compiled = g = new Grammar(symbols, ops, rules);
+        return g;
+    }
+
+    /**
+     * Grammaire exécutée par tell : la grammaire compilée, passée une fois
+     * par {@link GrammarOptimizer} après chaque modification.
+     */
+    Grammar executionGrammar() {
+        Grammar g = grammar();
+        if (!optimize)
+            return g;
+        if (optimizedFrom != g) {
+            optimized = GrammarOptimizer.optimize(g);
+            optimizedFrom = g;
+        }
+        return optimized;
+    }
+
+    /**
+     * Unités et état de départ de la tortue, s'ils sont donnés par la
+     * section « parameters » de la spécification (étape 1 d'initFromJson).
+     */
+    static void initTurtle(JSONObject obj, Turtle turtle) {
+        if (obj.has("parameters")) {
+            JSONObject pars = obj.getJSONObject("parameters");
+
+            // a) unité de longueur et d'angle
+            if (pars.has("step") && pars.has("angle")) {
+                double step = pars.getDouble("step");
+                double delta = pars.getDouble("angle");
+                turtle.setUnits(step, delta);
+            }
+
+            // b) état de départ [x, y, theta]
+            if (pars.has("start")) {
+                JSONArray start = pars.getJSONArray("start");
+                double x = start.getDouble(0);
+                double y = start.getDouble(1);
+                double theta = start.getDouble(2);
+                turtle.init(new Point2D.Double(x, y), theta);
+            }
+        }
+    }
+
     /*
      * ------------------------------------------------------------------
      * Exécute, sur la tortue, l’action associée au symbole donné.
@@ -61,34 +154,20 @@ public class LSystem extends AbstractLSystem{
     @Override
     public void tell(Turtle turtle, Symbol sym) {
         // action enregistrée dans setAction(char, String)
-        Consumer<Turtle> action = actions.get(sym);
-
-        if (action != null) { // symbole non décoratif
-            
-            action.accept(turtle); // on applique l'action à la tortue
-        }
-        // sinon : symbole sans action -> on l’ignore simplement
+        int id = ordinalOf(sym);
+        if (id >= 0)
+            TurtleOp.apply(turtle, ops[id]); // NONE : symbole décoratif ignoré
     }
 
     @Override
     public Symbol setAction(char symChar, String actionStr) {
         Symbol sym = intern(symChar);
 
-        if (actions.containsKey(sym))
+        if (ops[sym.ordinal] != TurtleOp.NONE)
             throw new IllegalArgumentException("Action déjà définie pour '" + symChar + "'");
-            
-        Consumer<Turtle> action;
-        switch (actionStr.trim().toLowerCase()) {
-            case "draw" -> action = Turtle::draw;
-            case "move" -> action = Turtle::move;
-            case "turnl" -> action = Turtle::turnL;
-            case "turnr" -> action = Turtle::turnR;
-            case "stay" -> action = Turtle::stay;
-            case "push" -> action = Turtle::push;
-            case "pop" -> action = Turtle::pop;
-            default -> throw new IllegalArgumentException("Action inconnue : " + actionStr);
-        }
-        actions.put(sym, action);
+
+        ops[sym.ordinal] = TurtleOp.parse(actionStr);
+        compiled = null;
         return sym;
     }
 
@@ -111,17 +190,117 @@ public class LSystem extends AbstractLSystem{
 
     @Override
     public Iterator<Symbol> rewrite(Symbol sym) {
-        // récupère la liste d’expansions pour ce symbole
-        List<List<Symbol>> candidates = rules.get(sym);
+        Grammar g = grammar();
+        int id = ordinalOf(sym);
 
         // symbole terminal si aucune règle
-        if (candidates == null || candidates.isEmpty()) {
+        if (id < 0 || g.altCount[id] == 0) {
             return null; // pas de réécriture
         }
 
         // choix aléatoire d’une expansion
-        int k = rnd.nextInt(candidates.size()); // rnd vient d’AbstractLSystem
-        return candidates.get(k).iterator();
+        int a = g.altStart[id] + rndInt(g.altCount[id]); // tirage d’AbstractLSystem
+        return new RhsIterator(g, g.rhsStart[a], g.rhsStart[a + 1]);
+    }
+
+    /** Parcours d'une tranche de membre droit dans la grammaire compilée. */
+    private static final class RhsIterator implements Iterator<Symbol> {
+        private final Grammar g;
+        private int pos;
+        private final int end;
+
+        RhsIterator(Grammar g, int pos, int end) {
+            this.g = g;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pos < end;
+        }
+
+        @Override
+        public Symbol next() {
+            if (pos >= end)
+                throw new NoSuchElementException();
+            return g.symbols[g.rhs[pos++]];
+        }
+    }
+
+    /*
+     * ------------------------------------------------------------------
+     * Génération n, symbole par symbole
+     * ------------------------------------------------------------------
+     */
+
+    /**
+     * Itérateur paresseux sur la génération n : chaque symbole de départ
+     * est développé à la demande ({@link Unfolder}), avec une pile de O(n)
+     * cadres et les mêmes choix de règles que tell. Les symboles inconnus
+     * de l'alphabet sont recopiés.
+     */
+    @Override
+    public Iterator<Symbol> applyRules(Iterator<Symbol> seq, int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("Nombre de réécritures négatif : " + n);
+        Grammar g = grammar();
+        Unfolder unfolder = new Unfolder(g, this);
+        return new Iterator<Symbol>() {
+            private int k; // symboles de départ connus, pour les clés
+            private Symbol copied; // symbole de départ rendu tel quel
+
+            @Override
+            public boolean hasNext() {
+                while (copied == null && !unfolder.hasNext() && seq.hasNext()) {
+                    Symbol s = seq.next();
+                    int id = ordinalOf(s);
+                    if (id >= 0) {
+                        long key = childKey(ROOT_KEY, k++);
+                        if (n > 0 && g.altCount[id] > 0) {
+                            unfolder.start(id, n, key);
+                            continue;
+                        }
+                    }
+                    copied = s;
+                }
+                return copied != null || unfolder.hasNext();
+            }
+
+            @Override
+            public Symbol next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                if (copied == null)
+                    return g.symbols[unfolder.next()];
+                Symbol s = copied;
+                copied = null;
+                return s;
+            }
+        };
+    }
+
+    /**
+     * Flux des symboles de la génération n, sans construire la chaîne.
+     * Si les choix de règles ne dépendent pas de l'ordre de parcours
+     * (grammaire déterministe ou mode compteur), le flux se découpe aux
+     * frontières des règles et {@code .parallel()} répartit le travail ;
+     * sinon il reste séquentiel, dans l'ordre de {@link #applyRules}.
+     */
+    public Stream<Symbol> stream(Iterator<Symbol> seq, int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("Nombre de réécritures négatif : " + n);
+        Grammar g = grammar();
+        if (!g.deterministic && !isCounterBased()) {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(applyRules(seq, n),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+        List<Symbol> start = new ArrayList<>();
+        seq.forEachRemaining(start::add);
+        Symbol[] symbols = start.toArray(new Symbol[0]);
+        int[] ids = start.stream().mapToInt(this::ordinalOf).toArray();
+        AbstractLSystem chooser = g.deterministic ? null : this;
+        return StreamSupport.stream(new Unfolder.Splitter(g, chooser, symbols, ids, n), false);
     }
 
     /* ------------------------------------------------------------------
@@ -132,8 +311,11 @@ public class LSystem extends AbstractLSystem{
     public void addRule(char symChar, String expansion) {
         Symbol left = intern(symChar);
         List<Symbol> rhs = toSymbolList(expansion);
-        rules.computeIfAbsent(left, k -> new ArrayList<>()).add(rhs);
-
+        int[] ids = new int[rhs.size()];
+        for (int i = 0; i < ids.length; ++i)
+            ids[i] = rhs.get(i).ordinal;
+        rules.get(left.ordinal).add(ids);
+        compiled = null;
     }
 
      /*
@@ -153,25 +335,7 @@ public class LSystem extends AbstractLSystem{
         }
 
         /* ---------- 1) paramètres de la tortue (facultatif) ---------- */
-        if (obj.has("parameters")) {
-            JSONObject pars = obj.getJSONObject("parameters");
-
-            // a) unité de longueur et d'angle
-            if (pars.has("step") && pars.has("angle")) {
-                double step = pars.getDouble("step");
-                double delta = pars.getDouble("angle");
-                turtle.setUnits(step, delta);
-            }
-
-            // b) état de départ [x, y, theta]
-            if (pars.has("start")) {
-                JSONArray start = pars.getJSONArray("start");
-                double x = start.getDouble(0);
-                double y = start.getDouble(1);
-                double theta = start.getDouble(2);
-                turtle.init(new Point2D.Double(x, y), theta);
-            }
-        }
+        initTurtle(obj, turtle);
 
         /* ---------- 2) alphabet & actions (obligatoire) ---------- */
         JSONObject actions = obj.getJSONObject("actions");
@@ -202,64 +366,292 @@ public class LSystem extends AbstractLSystem{
      * ------------------------------------------------------------------
      * Exécute la chaîne obtenue après n réécritures et renvoie
      * le bounding-box de toutes les positions visitées par la tortue.
+     *
+     * Chaque symbole de départ est développé par le moteur itératif
+     * (Expander) : pile explicite de cadres, symboles résolus par
+     * indexation dans la grammaire compilée, règles tirées dans le même
+     * ordre (préfixe) que par la version récursive, et aucune allocation
+     * par symbole. En mode parallèle, une RecordingTurtle est alimentée
+     * par des tâches fork/join (BranchTask), avec le même résultat ;
+     * une grammaire compilée (compile) s'exécute par sa classe cachée ;
+     * en mode pipeline, l'expansion passe à un autre fil (OpPipeline).
+     * Hors mode parallèle, c'est la grammaire optimisée qui s'exécute
+     * (executionGrammar).
+     * Le k-ième symbole de départ reçoit la clé childKey(ROOT_KEY, k),
+     * utilisée par le mode compteur pour choisir les règles.
      * ------------------------------------------------------------------
      */
     @Override
     public Rectangle2D tell(Turtle turtle,
             Iterator<Symbol> seq,
             int n) {
-        /* cas de base : n == 0 → on parcourt directement seq */
-        //System.out.println("JJSJJJNNJNJJNNJNJNJJN " + seq.next());
-        if (n == 0) {
-            //System.out.println("Passé la boucle");
-
-            Point2D start = turtle.getPosition(); // inclure le départ
-            double minX = start.getX(), minY = start.getY();
-            double maxX = start.getX(), maxY = start.getY();
-
+        if (n < 0)
+            throw new IllegalArgumentException("Nombre de réécritures négatif : " + n);
+
+        double x0 = turtle.getX(), y0 = turtle.getY(); // inclure le départ
+        double[] box = { x0, y0, x0, y0 };
+
+        Grammar g = grammar(), exec = executionGrammar(); // exec : hors mode parallèle
+        // choix de règles indépendants de l'ordre de parcours ?
+        boolean addressable = g.deterministic || isCounterBased();
+        if (parallel && addressable && turtle instanceof RecordingTurtle recorder
+                && (CurveScan.supports(g) || BranchTask.supports(g))) {
+            AbstractLSystem chooser = g.deterministic ? null : this;
+            int[] ids = knownOrdinals(seq);
+            if (CurveScan.supports(g))
+                CurveScan.tell(g, chooser, recorder, ids, n, box); // courbe sans crochets
+            else
+                BranchTask.tell(g, chooser, recorder, ids, n, box);
+        } else if (specializedFor == exec && n <= GrammarCompiler.MAX_LEVEL) {
+            while (seq.hasNext()) {
+                int id = ordinalOf(seq.next());
+                if (id >= 0)
+                    specialized.run(turtle, id, n, box);
+            }
+        } else if (pipelined) {
+            OpPipeline.tell(exec, this, turtle, knownOrdinals(seq), n, box);
+        } else {
+            Expander expander = new Expander(exec, this);
+            int k = 0;
             while (seq.hasNext()) {
-                Symbol s = seq.next();
-                tell(turtle, s); // peut déplacer la tortue
-                Point2D p = turtle.getPosition(); // position après l’action
-                minX = Math.min(minX, p.getX());
-                minY = Math.min(minY, p.getY());
-                maxX = Math.max(maxX, p.getX());
-                maxY = Math.max(maxY, p.getY());
+                int id = ordinalOf(seq.next());
+                if (id >= 0) // sinon symbole étranger : ni action ni règle
+                    expander.run(turtle, id, n, childKey(ROOT_KEY, k++), box);
             }
-            /* bounding-box de la phase « exécution » */
-            return new Rectangle2D.Double(minX, minY,
-                    maxX - minX, maxY - minY);
         }
 
-        /* cas récursif : n > 0 → on réécrit symbole-par-symbole */
-        Rectangle2D bbox = null; // bounding-box cumulatif
-        while (seq.hasNext()) {
-            Symbol s = seq.next();
-            Iterator<Symbol> expansion = rewrite(s); // null si terminal
-            Rectangle2D subBox;
+        return new Rectangle2D.Double(box[0], box[1],
+                box[2] - box[0], box[3] - box[1]);
+    }
 
-            if (expansion == null) {
-                /* s est terminal : on exécute immédiatement (n-1 ne change rien) */
-                subBox = tell(turtle, List.of(s).iterator(), 0);
-            } else {
-                /* s est non-terminal : on descend d’un niveau de récursion */
-                subBox = tell(turtle, expansion, n - 1);
+    /**
+     * Compile la grammaire courante en une classe cachée dont chaque
+     * symbole à règle est une méthode qui appelle directement la tortue
+     * ({@link GrammarCompiler}) ; tell l'utilise ensuite hors mode
+     * parallèle, jusqu'à la prochaine modification de la grammaire. Les
+     * grammaires aléatoires ne sont pas compilées.
+     *
+     * @return vrai si la grammaire est compilée
+     */
+    public boolean compile() {
+        Grammar g = executionGrammar();
+        if (specializedFor != g) {
+            specialized = GrammarCompiler.compile(g);
+            specializedFor = specialized == null ? null : g;
+        }
+        return specializedFor == g;
+    }
+
+    /** Ordinaux des symboles connus de {@code seq}, dans l'ordre. */
+    private int[] knownOrdinals(Iterator<Symbol> seq) {
+        List<Symbol> symbols = new ArrayList<>();
+        seq.forEachRemaining(symbols::add);
+        return symbols.stream().mapToInt(this::ordinalOf).filter(id -> id >= 0).toArray();
+    }
+
+    /**
+     * Active ou non l'optimisation de la grammaire exécutée par
+     * {@link #tell(Turtle, Iterator, int)} hors mode parallèle
+     * ({@link GrammarOptimizer}) : symboles sans action ni règle et
+     * {@code stay} retirés, virages consécutifs regroupés, symboles
+     * équivalents confondus. Le tracé et les tirages sont les mêmes ; la
+     * tortue reçoit moins d'appels, dont des {@link Turtle#turn(int)}.
+     * Active par défaut.
+     *
+     * @param optimize faux pour exécuter la grammaire telle qu'écrite
+     */
+    public void setOptimized(boolean optimize) {
+        this.optimize = optimize;
+    }
+
+    /**
+     * Active le mode pipeline de {@link #tell(Turtle, Iterator, int)} quand
+     * il reste séquentiel : l'expansion tourne sur un autre fil et passe à
+     * la tortue des lots de codes d'action par un anneau borné sans verrou
+     * ({@link OpPipeline}), pour recouvrir calcul et écriture. Le tracé et
+     * les tirages sont ceux du mode séquentiel.
+     *
+     * @param pipelined vrai pour activer le pipeline
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Active le mode parallèle de {@link #tell(Turtle, Iterator, int)},
+     * pour une {@link RecordingTurtle} et une grammaire déterministe, ou
+     * stochastique en mode compteur ({@link #setCounterBased(boolean)}) :
+     * <ul>
+     * <li>crochets équilibrés : les branches [ ... ] assez grosses sont
+     * développées en parallèle (ForkJoinPool commun) et leurs segments
+     * recollés dans l'ordre séquentiel ; le tracé est identique à celui du
+     * mode séquentiel ({@link BranchTask}) ;</li>
+     * <li>sans crochets : la génération est découpée en morceaux dont les
+     * états de départ viennent d'un préfixe parallèle des déplacements
+     * rigides ; le tracé est identique à l'arrondi près ({@link CurveScan}).</li>
+     * </ul>
+     * Dans les autres cas, tell reste séquentiel.
+     *
+     * @param parallel vrai pour activer le mode parallèle
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+
+    /*
+     * ------------------------------------------------------------------
+     * Bounding-box analytique : connu avant de dessiner
+     * ------------------------------------------------------------------
+     */
+
+    /**
+     * Bounding-box du tracé de l'axiome après n réécritures, calculé sans
+     * simuler la tortue pas à pas (voir {@link AnalyticBounds}). La tortue
+     * fournit seulement l'état de départ et les unités ; elle ne bouge pas.
+     *
+     * @param turtle tortue déjà initialisée (par exemple par initFromJson)
+     * @param n nombre de réécritures
+     * @return le même rectangle que {@link #tell(Turtle, Iterator, int)}
+     *         (à l'arrondi près), ou null si la grammaire est aléatoire,
+     *         si l'angle unitaire ne divise pas 360 ou si les crochets
+     *         d'un membre droit ne sont pas équilibrés
+     */
+    public Rectangle2D boundingBox(Turtle turtle, int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("Nombre de réécritures négatif : " + n);
+        Grammar g = grammar();
+        AnalyticBounds bounds = AnalyticBounds.of(g, turtle.getUnitStep(),
+                turtle.getAngle(), turtle.getUnitAngle(), n);
+        if (bounds == null)
+            return null;
+
+        Point2D start = turtle.getPosition();
+        return bounds.bounds(axiomOrdinals(), start.getX(), start.getY(), n);
+    }
+
+    /*
+     * ------------------------------------------------------------------
+     * Accès direct dans la génération n (grammaire déterministe)
+     * ------------------------------------------------------------------
+     */
+
+    /**
+     * Symboles {@code from} (inclus) à {@code to} (exclu) de la génération n
+     * de l'axiome, sans développer ceux qui les précèdent (voir {@link Seek}).
+     *
+     * @throws IllegalStateException si la grammaire est aléatoire
+     * @throws IndexOutOfBoundsException si [from, to) sort de la génération
+     */
+    public Iterator<Symbol> window(int n, long from, long to) {
+        Seek seek = seek(n);
+        int[] seq = axiomOrdinals();
+        Objects.checkFromToIndex(from, to, seek.length(seq));
+        Seek.Cursor cursor = seek.cursor(seq, from);
+        Symbol[] table = grammar().symbols;
+        return new Iterator<Symbol>() {
+            private long remaining = to - from;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
             }
 
-            /* union géométrique avec le bbox courant */
-            if (bbox == null)
-                bbox = subBox;
-            else
-                bbox = bbox.createUnion(subBox);
-        }
+            @Override
+            public Symbol next() {
+                if (remaining == 0)
+                    throw new NoSuchElementException();
+                --remaining;
+                return table[cursor.next()];
+            }
+        };
+    }
 
-        /* si bbox est resté null (chaîne vide) → bbox 0×0 à la position courante */
-        if (bbox == null) {
-            Point2D p = turtle.getPosition();
-            bbox = new Rectangle2D.Double(p.getX(), p.getY(), 0, 0);
+    /**
+     * Exécute les symboles {@code from} à {@code to} (exclu) de la génération
+     * n de l'axiome, comme le ferait {@link #tell(Turtle, Iterator, int)}
+     * arrivé au symbole {@code from} : la tortue, initialisée comme pour tell,
+     * est d'abord placée dans l'état qu'elle aurait à ce symbole. Les états
+     * empilés avant {@code from} sont rendus par {@link Turtle#init} quand
+     * un pop de la fenêtre les atteint.
+     *
+     * @return bounding-box des positions visitées dans la fenêtre, départ compris
+     * @throws IllegalStateException si la grammaire est aléatoire ou si les
+     *         crochets d'un membre droit ne sont pas équilibrés
+     * @throws IndexOutOfBoundsException si [from, to) sort de la génération
+     */
+    public Rectangle2D tellWindow(Turtle turtle, int n, long from, long to) {
+        Seek seek = seek(n);
+        int[] seq = axiomOrdinals();
+        Objects.checkFromToIndex(from, to, seek.length(seq));
+        Point2D start = turtle.getPosition();
+        Seek.Cursor cursor = seek.cursor(seq, from, turtle.getUnitStep(), turtle.getUnitAngle(),
+                start.getX(), start.getY(), turtle.getAngle());
+
+        turtle.init(new Point2D.Double(cursor.x, cursor.y), cursor.angle);
+        double[] box = { cursor.x, cursor.y, cursor.x, cursor.y };
+        byte[] op = grammar().op;
+        int depth = 0; // pushes faits dans la fenêtre
+        for (long k = from; k < to; ++k) {
+            byte action = op[cursor.next()];
+            if (action == TurtleOp.POP && depth == 0 && cursor.depth > 0) {
+                int d = --cursor.depth; // état empilé avant la fenêtre
+                turtle.init(new Point2D.Double(cursor.stack[3 * d], cursor.stack[3 * d + 1]),
+                        cursor.stack[3 * d + 2]);
+            } else {
+                TurtleOp.apply(turtle, action);
+                if (action == TurtleOp.PUSH)
+                    ++depth;
+                else if (action == TurtleOp.POP && depth > 0)
+                    --depth;
+            }
+            double x = turtle.getX(), y = turtle.getY();
+            box[0] = Math.min(box[0], x);
+            box[1] = Math.min(box[1], y);
+            box[2] = Math.max(box[2], x);
+            box[3] = Math.max(box[3], y);
         }
-        return bbox;
+        return new Rectangle2D.Double(box[0], box[1], box[2] - box[0], box[3] - box[1]);
     }
 
+    /**
+     * Génération n de l'axiome sous forme de graphe partagé de nœuds
+     * (symbole, profondeur) : mémoire linéaire en n, parcours par itérateur
+     * ou flux sans construire la chaîne (voir {@link Derivation}).
+     *
+     * @throws IllegalStateException si la grammaire est aléatoire
+     */
+    public Derivation derivation(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("Nombre de réécritures négatif : " + n);
+        return new Derivation(grammar(), axiomOrdinals(), n);
+    }
+
+    private Seek seek(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("Nombre de réécritures négatif : " + n);
+        return new Seek(grammar(), n);
+    }
+
+    int[] axiomOrdinals() {
+        int[] seq = new int[axiom.size()];
+        for (int i = 0; i < seq.length; ++i)
+            seq[i] = axiom.get(i).ordinal;
+        return seq;
+    }
+
+    /**
+     * Taille de la génération n de l'axiome, calculée sans la développer :
+     * de quoi refuser un travail trop gros ou dimensionner les tampons
+     * avant de dessiner (voir {@link ExpansionEstimate}).
+     *
+     * @param n nombre de réécritures
+     * @return comptes exacts, ou intervalles si la grammaire est aléatoire
+     */
+    public ExpansionEstimate estimate(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("Nombre de réécritures négatif : " + n);
+        return new ExpansionEstimate(grammar(), axiomOrdinals(), n);
+    }
 
 }
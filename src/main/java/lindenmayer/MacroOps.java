@@ -0,0 +1,144 @@
+package lindenmayer;
+
+/**
+ * Macro-ops d'une {@link Grammar} : une suite de symboles exécutés tels
+ * quels (suite de terminaux, ou tout un membre droit au dernier niveau)
+ * donne toujours les mêmes segments et le même déplacement net, à une
+ * translation près, pour une orientation de départ donnée.
+ *
+ * <p>Pour une géométrie de tortue en mode table ({@link Heading}), chaque
+ * suite est simulée une fois par orientation de départ, à la première
+ * demande : ses segments sont gardés dans un repère local d'origine la
+ * position de départ, avec le déplacement (dx, dy) et le nombre de virages
+ * nets. {@link RecordingTurtle#stamp} rejoue ensuite la suite d'un seul
+ * bloc, translaté. Les coordonnées obtenues sont celles du pas à pas, aux
+ * arrondis de l'addition près.
+ *
+ * <p>Une suite dont un pop dépile un état d'avant la suite, ou qui laisse
+ * un push ouvert, n'est pas fusionnée. Les tables se remplissent sans
+ * verrou : deux fils peuvent simuler la même suite, le résultat est le même
+ * et une {@link Macro} est immuable.
+ */
+final class MacroOps {
+    /** En dessous, la suite est exécutée pas à pas. */
+    static final int MIN_OPS = 4;
+
+    /** Géométrie d'une tortue en mode table : même table de vecteurs. */
+    record Geometry(double step, double unit, double base) {
+    }
+
+    /** Suite simulée : segments locaux, déplacement et virages nets. */
+    static final class Macro {
+        /** segments, depuis l'origine */
+        final SegmentBuffer local;
+        final double dx, dy;
+        final int turns;
+        /** {minX, minY, maxX, maxY} des positions après draw, move et pop ; null s'il n'y en a pas */
+        final double[] visited;
+
+        Macro(SegmentBuffer local, double dx, double dy, int turns, double[] visited) {
+            this.local = local;
+            this.dx = dx;
+            this.dy = dy;
+            this.turns = turns;
+            this.visited = visited;
+        }
+    }
+
+    /** Suite non fusionnable. */
+    private static final Macro NOT_FUSED = new Macro(null, 0, 0, 0, null);
+
+    private final Grammar g;
+    private final Geometry geometry;
+    private final double[] tableX, tableY;
+    /** début de suite -> macro par orientation : suites de terminaux, membres droits entiers */
+    private final Macro[][] runs, wholes;
+
+    private MacroOps(Grammar g, Geometry geometry, Heading heading) {
+        this.g = g;
+        this.geometry = geometry;
+        this.tableX = heading.tableX();
+        this.tableY = heading.tableY();
+        this.runs = new Macro[g.rhs.length][];
+        this.wholes = new Macro[g.rhs.length][];
+    }
+
+    /** Macro-ops de {@code g} pour la tortue d'orientation {@code heading}, ou null hors mode table. */
+    static MacroOps of(Grammar g, Heading heading) {
+        if (!heading.tabulated())
+            return null;
+        Geometry key = new Geometry(heading.step(), heading.unit(), heading.base());
+        return g.macros.computeIfAbsent(key, k -> new MacroOps(g, k, heading));
+    }
+
+    Geometry geometry() {
+        return geometry;
+    }
+
+    /** Vrai si {@code heading} a la géométrie de ces macro-ops. */
+    boolean fits(Heading heading) {
+        return heading.tabulated() && heading.step() == geometry.step && heading.unit() == geometry.unit
+                && heading.base() == geometry.base;
+    }
+
+    /**
+     * Macro de la suite {@code rhsOp[from .. to-1]} pour l'orientation de
+     * départ {@code index} ; null si la suite n'est pas fusionnable.
+     *
+     * @param to {@link Grammar#terminalEnd}{@code [from]}, ou la fin du
+     *           membre droit qui commence en {@code from}
+     */
+    Macro macro(int from, int to, int index) {
+        Macro[][] table = to == g.terminalEnd[from] ? runs : wholes;
+        Macro[] row = table[from];
+        if (row == null)
+            table[from] = row = new Macro[tableX.length];
+        Macro m = row[index];
+        if (m == null)
+            row[index] = m = simulate(from, to, index);
+        return m == NOT_FUSED ? null : m;
+    }
+
+    /** Exécute la suite sur une tortue locale, partie de l'origine. */
+    private Macro simulate(int from, int to, int index) {
+        SegmentBuffer local = new SegmentBuffer(to - from);
+        StateStack stack = new StateStack();
+        double x = 0, y = 0;
+        int turns = 0, m = tableX.length;
+        double[] visited = null;
+        for (int i = from; i < to; ++i) {
+            byte op = g.rhsOp[i];
+            switch (op) {
+                case TurtleOp.DRAW, TurtleOp.MOVE -> {
+                    int k = Math.floorMod(index + turns, m);
+                    double nx = x + tableX[k], ny = y + tableY[k];
+                    local.add(x, y, nx, ny, op == TurtleOp.DRAW);
+                    x = nx;
+                    y = ny;
+                }
+                case TurtleOp.PUSH -> {
+                    stack.push(x, y, turns);
+                    continue;
+                }
+                case TurtleOp.POP -> {
+                    if (!stack.pop())
+                        return NOT_FUSED; // état d'avant la suite
+                    x = stack.x();
+                    y = stack.y();
+                    turns = (int) stack.angle();
+                }
+                default -> {
+                    turns += TurtleOp.turns(op); // stay, NONE : 0
+                    continue;
+                }
+            }
+            if (visited == null)
+                visited = new double[] { x, y, x, y };
+            else
+                TurtleOp.include(visited, x, y);
+        }
+        if (stack.depth() != 0)
+            return NOT_FUSED; // push ouvert après la suite
+        return new Macro(local, x, y, turns, visited);
+    }
+}
@@ -8,6 +8,7 @@ import java.awt.*;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
 import java.io.FileReader;
+import java.util.function.Consumer;
 
 /**
  * Programme principal Swing pour afficher un L‐system à l'écran.
@@ -27,18 +28,34 @@ public class MainSwing {
         // 1) Chargement du JSON
         JSONObject spec = new JSONObject(new JSONTokener(new FileReader(jsonFile)));
 
-        // 2) Calcul muet du bounding‐box (avec FakeTurtle)
-        LSystem sysBBox = new LSystem();
-        FakeTurtle dummy = new FakeTurtle(new Point2D.Double(0, 0), 90);
-        sysBBox.initFromJson(spec, dummy);
-        Rectangle2D bbox = sysBBox.tell(dummy, sysBBox.getAxiom(), n);
+        // 2) Bounding‐box analytique si possible, sinon une seule expansion
+        //    enregistrée (tracé + bounding‐box) rejouée ensuite
+        LSystem sys = new LSystem();
+        sys.setParallel(true); // expansion enregistrée : branches en parallèle
+        sys.setCounterBased(true); // choix de règles par chemin : herbe aussi en parallèle
+        RecordingTurtle recorder = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        sys.initFromJson(spec, recorder);
+        Rectangle2D analytic = sys.boundingBox(recorder, n);
+        Rectangle2D bbox;
+        Consumer<SwingTurtle> painter;
+        if (analytic != null) {
+            bbox = analytic;
+            painter = turtle -> {
+                turtle.setUnits(recorder.getUnitStep(), recorder.getUnitAngle());
+                turtle.init(recorder.getPosition(), recorder.getAngle());
+                sys.tell(turtle, sys.getAxiom(), n);
+            };
+        } else {
+            bbox = sys.tell(recorder, sys.getAxiom(), n);
+            painter = recorder.segments()::replay;
+        }
 
         // 3) Créer et montrer la fenêtre Swing (sur le thread EDT)
         SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("L‐System Viewer");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-            DrawingPanel drawingPanel = new DrawingPanel(spec, n, bbox);
+            DrawingPanel drawingPanel = new DrawingPanel(painter, bbox);
             frame.getContentPane().add(drawingPanel);
             frame.pack();
             frame.setLocationRelativeTo(null);
@@ -47,13 +64,13 @@ public class MainSwing {
     }
 
     /**
-     * JPanel qui contient un BufferedImage de la taille du bounding‐box, dessine le
-     * L‐system dedans, puis l'affiche.
+     * JPanel qui contient un BufferedImage de la taille du bounding‐box, y dessine le
+     * L‐system (directement ou par rejeu du tracé enregistré), puis l'affiche.
      */
     private static class DrawingPanel extends JPanel {
         private final BufferedImage canvas;
 
-        DrawingPanel(JSONObject spec, int iterations, Rectangle2D bbox) {
+        DrawingPanel(Consumer<SwingTurtle> painter, Rectangle2D bbox) {
             // Convertir bounding‐box en dimensions entières (points ≃ pixels)
             int imgW = (int) Math.ceil(bbox.getWidth());
             int imgH = (int) Math.ceil(bbox.getHeight());
@@ -80,14 +97,10 @@ public class MainSwing {
             // 4) Créer la tortue Swing attachée à ce Graphics2D
             SwingTurtle turtle = new SwingTurtle(g2, 0, 0, 90);
 
-            // 5) Créer un nouveau LSystem pour dessiner
-            LSystem sysDraw = new LSystem();
-            sysDraw.initFromJson(spec, turtle);
-
-            // 6) Lancer le tracé (itérations données)
-            sysDraw.tell(turtle, sysDraw.getAxiom(), iterations);
+            // 5) Dessiner : expansion directe ou rejeu du tracé enregistré
+            painter.accept(turtle);
 
-            // 7) Libérer le Graphics2D
+            // 6) Libérer le Graphics2D
             g2.dispose();
 
             // Définir la taille du panel pour que Swing lui donne exactement cette
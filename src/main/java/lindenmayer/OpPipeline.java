@@ -0,0 +1,173 @@
+package lindenmayer;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pipeline producteur/consommateur entre l'expansion et la tortue de sortie.
+ *
+ * <p>Un fil dédié développe la génération ({@link Expander}) et range les
+ * codes {@link TurtleOp} dans des lots de taille fixe, sans les exécuter
+ * (le producteur n'est qu'un {@link OpSink}), pris dans un anneau
+ * borné à un seul producteur et un seul consommateur ; le fil appelant
+ * exécute les lots sur la tortue (calcul et écriture) pendant que les
+ * suivants se remplissent. La passation se fait sans verrou : une case
+ * appartient au producteur jusqu'à sa publication ({@code tail}), puis au
+ * consommateur jusqu'à sa libération ({@code head}). Une attente, anneau
+ * plein ou vide, tourne un peu puis s'endort brièvement.
+ *
+ * <p>Les règles sont choisies par le producteur dans le même ordre qu'en
+ * séquentiel : le tracé est identique, tirages compris.
+ */
+final class OpPipeline {
+    /** Codes par lot. */
+    static final int BATCH = 1 << 12;
+    /** Lots dans l'anneau (puissance de 2). */
+    static final int SLOTS = 16;
+    private static final int MASK = SLOTS - 1;
+    private static final int SPINS = 100;
+
+    private final byte[][] slots = new byte[SLOTS][BATCH];
+    private final int[] lengths = new int[SLOTS];
+    private final AtomicLong head = new AtomicLong(); // lots rendus par le consommateur
+    private final AtomicLong tail = new AtomicLong(); // lots publiés par le producteur
+    private volatile boolean done; // plus rien à publier
+    private volatile boolean cancelled; // consommateur en échec : le producteur s'arrête
+    private volatile Throwable failure; // exception du producteur
+
+    private OpPipeline() {
+    }
+
+    /**
+     * Exécute sur {@code turtle} la génération n des symboles {@code ids},
+     * développée sur un autre fil ; élargit {@code box} aux positions visitées.
+     * Une exception de l'expansion est relancée ici.
+     *
+     * @param sys L-système dont on suit le mode aléatoire
+     */
+    static void tell(Grammar g, AbstractLSystem sys, Turtle turtle, int[] ids, int n, double[] box) {
+        OpPipeline pipe = new OpPipeline();
+        Thread producer = new Thread(() -> pipe.produce(g, sys, ids, n), "lindenmayer-expander");
+        producer.setDaemon(true);
+        producer.start();
+        boolean ok = false;
+        try {
+            pipe.consume(turtle, box);
+            ok = true;
+        } finally {
+            if (!ok)
+                pipe.cancelled = true;
+            join(producer);
+        }
+        Throwable e = pipe.failure;
+        if (e instanceof RuntimeException r)
+            throw r;
+        if (e instanceof Error err)
+            throw err;
+    }
+
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true; // on finit d'attendre, puis on rétablit le drapeau
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private static void await(int spins) {
+        if (spins < SPINS)
+            Thread.onSpinWait();
+        else
+            LockSupport.parkNanos(20_000);
+    }
+
+    /*-------------------------------- producteur -----------------------------*/
+
+    private void produce(Grammar g, AbstractLSystem sys, int[] ids, int n) {
+        try {
+            Producer out = new Producer();
+            Expander expander = new Expander(g, sys);
+            for (int k = 0; k < ids.length; ++k)
+                expander.run(out, ids[k], n, AbstractLSystem.childKey(AbstractLSystem.ROOT_KEY, k), null);
+            out.close();
+        } catch (CancellationException e) {
+            // le consommateur a échoué : son exception l'emporte
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            done = true;
+        }
+    }
+
+    /**
+     * Destination des codes côté producteur : les suites passées par
+     * l'expansion sont recopiées dans le lot courant, rien n'est calculé
+     * sur ce fil ; la tortue de sortie fait tout le calcul sur le sien.
+     */
+    private final class Producer implements OpSink {
+        private long next; // numéro du lot en cours de remplissage
+        private byte[] batch = slots[0];
+        private int count;
+
+        /** Publie le lot courant et attend une case libre pour le suivant. */
+        private void publish() {
+            lengths[(int) (next & MASK)] = count;
+            tail.setRelease(++next);
+            for (int spins = 0; next - head.getAcquire() == SLOTS; ++spins) {
+                if (cancelled)
+                    throw new CancellationException();
+                await(spins);
+            }
+            batch = slots[(int) (next & MASK)];
+            count = 0;
+        }
+
+        void close() {
+            if (count > 0) {
+                lengths[(int) (next & MASK)] = count;
+                tail.setRelease(++next);
+            }
+        }
+
+        /** Suite de codes recopiée d'un bloc, à cheval sur plusieurs lots au besoin. */
+        @Override
+        public void execute(byte[] ops, int from, int to, double[] box) {
+            while (from < to) {
+                if (count == BATCH)
+                    publish();
+                int n = Math.min(to - from, BATCH - count);
+                System.arraycopy(ops, from, batch, count, n);
+                count += n;
+                from += n;
+            }
+        }
+    }
+
+    /*-------------------------------- consommateur ---------------------------*/
+
+    private void consume(Turtle turtle, double[] box) {
+        long h = 0;
+        for (int spins = 0;; ++spins) {
+            boolean finished = done; // lu avant tail : publié avant done
+            long t = tail.getAcquire();
+            if (h == t) {
+                if (finished)
+                    return;
+                await(spins);
+                continue;
+            }
+            spins = 0;
+            for (; h < t; head.setRelease(++h)) {
+                int slot = (int) (h & MASK);
+                turtle.execute(slots[slot], 0, lengths[slot], box);
+            }
+        }
+    }
+}
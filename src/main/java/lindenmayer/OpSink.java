@@ -0,0 +1,18 @@
+package lindenmayer;
+
+/**
+ * Destination d'une suite de codes {@link TurtleOp} : une {@link Turtle}
+ * qui les exécute, ou le producteur d'un {@link OpPipeline} qui les range
+ * dans ses lots sans rien calculer. L'expansion ({@link Expander}) n'a
+ * besoin de rien d'autre.
+ */
+@FunctionalInterface
+public interface OpSink {
+    /**
+     * Reçoit les codes {@code ops[from .. to-1]}, dans l'ordre.
+     *
+     * @param box {minX, minY, maxX, maxY}, élargi aux positions visitées ;
+     *            null pour ne pas suivre le bounding-box
+     */
+    void execute(byte[] ops, int from, int to, double[] box);
+}
@@ -3,33 +3,138 @@ package lindenmayer;
 
 import java.awt.geom.Point2D;
 import java.io.PrintWriter;
-import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
 
-public class PostScriptTurtle implements Turtle {
+public class PostScriptTurtle implements Turtle, SegmentSink {
+    /** Mode compact : éléments d'un chemin avant un stroke, à la prochaine rupture. */
+    static final int MAX_PATH = 1500;
 
-    private final PrintWriter out; // flux EPS
-    private Point2D.Double pos; // position courante
-    private double angle; // degrés
-    private double step = 1.0, delta = 25.0; // unités
-    private final ArrayDeque<State> stack = new ArrayDeque<>();
+    private final EpsWriter out; // flux EPS
+    private double x, y; // position courante
+    private final Heading heading; // angle en degrés et unités
+    private final StateStack stack = new StateStack();
 
-    private record State(Point2D.Double pos, double angle) {
-    }
+    /* mode compact : trait en cours (pas encore écrit) et point courant écrit */
+    private boolean compact;
+    private boolean run; // un trait rectiligne est en attente
+    private double runDx, runDy; // direction du trait en attente
+    private double runX, runY; // extrémité du trait en attente
+    private long ex, ey; // point courant du chemin PostScript, en millièmes
+    private int pathElements; // éléments depuis le dernier stroke
 
+    /**
+     * Écrit dans un {@link PrintWriter} partagé avec l'appelant (ligne par
+     * ligne, dans l'ordre) ; voir aussi {@link EpsWriter}.
+     */
     public PostScriptTurtle(Point2D.Double pos, double initialAngle, PrintWriter out) {
+        this(pos, initialAngle, new EpsWriter(out));
+    }
+
+    /**
+     * @param out écrivain EPS tamponné ; l'appelant le vide ou le ferme
+     */
+    public PostScriptTurtle(Point2D.Double pos, double initialAngle, EpsWriter out) {
         this.out = out;
-        this.pos = pos;
-        this.angle = initialAngle;
-        out.printf("newpath %.3f %.3f moveto%n", pos.x, pos.y);
+        this.x = pos.x;
+        this.y = pos.y;
+        this.heading = new Heading(initialAngle, 1.0, 25.0);
+        out.text("newpath ").point(x, y, "moveto");
+        ex = Math.round(x * 1000);
+        ey = Math.round(y * 1000);
+    }
+
+    /** Suite d'un chemin déjà commencé (morceau de {@link #replay(SegmentSource)}) : rien n'est écrit. */
+    private PostScriptTurtle(EpsWriter out, double x, double y, boolean compact) {
+        this.out = out;
+        this.x = x;
+        this.y = y;
+        this.heading = new Heading(0, 1.0, 25.0);
+        this.compact = compact;
+    }
+
+    /**
+     * Active le mode compact : les pas colinéaires consécutifs deviennent un
+     * seul {@code rlineto} (abrégé {@code l}), les déplacements et retours de
+     * branche un seul {@code moveto} ({@code m}) au prochain trait, et le chemin n'est tracé
+     * ({@code stroke}) qu'à une rupture, tous les {@value #MAX_PATH}
+     * éléments. Les déplacements relatifs sont des différences de positions
+     * absolues arrondies au millième : pas d'erreur cumulée. Appeler
+     * {@link #flush()} avant le {@code stroke} final.
+     */
+    public void setCompact(boolean compact) {
+        flush();
+        if (compact && !this.compact)
+            out.text("/l /rlineto load def /m /moveto load def").newline(); // opérateurs abrégés
+        this.compact = compact;
+        ex = Math.round(x * 1000); // point courant laissé par le mode précédent
+        ey = Math.round(y * 1000);
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /** Écrit le trait en attente (mode compact) ; sans effet sinon. */
+    public void flush() {
+        if (!run)
+            return;
+        long mx = Math.round(runX * 1000), my = Math.round(runY * 1000);
+        out.milli(mx - ex).space().milli(my - ey).text(" l").newline();
+        ex = mx;
+        ey = my;
+        run = false;
+        ++pathElements;
+    }
+
+    /** Mode compact : un trait (pen) ou un déplacement de (x0, y0) à (x1, y1). */
+    private void compactStep(double x0, double y0, double x1, double y1, boolean pen) {
+        if (!pen) {
+            flush(); // le moveto attend le prochain trait
+            return;
+        }
+        double dx = x1 - x0, dy = y1 - y0;
+        if (run) {
+            if (x0 == runX && y0 == runY && collinear(dx, dy)) {
+                runX = x1;
+                runY = y1;
+                return;
+            }
+            flush();
+        }
+        long mx = Math.round(x0 * 1000), my = Math.round(y0 * 1000);
+        if (mx != ex || my != ey) { // rupture du chemin
+            if (pathElements >= MAX_PATH) {
+                out.text("stroke newpath ");
+                pathElements = 0;
+            }
+            out.milli(mx).space().milli(my).text(" m").newline();
+            ex = mx;
+            ey = my;
+            ++pathElements;
+        }
+        run = true;
+        runDx = dx;
+        runDy = dy;
+        runX = x1;
+        runY = y1;
+    }
+
+    /** Même sens que le trait en attente, à l'arrondi près. */
+    private boolean collinear(double dx, double dy) {
+        double cross = runDx * dy - runDy * dx, dot = runDx * dx + runDy * dy;
+        return dot > 0 && Math.abs(cross) <= 1e-9 * dot;
     }
 
     /*-------------------------------- actions --------------------------------*/
 
     private void advance(boolean draw) {
-        double rad = Math.toRadians(angle);
-        pos.x += step * Math.cos(rad);
-        pos.y += step * Math.sin(rad);
-        out.printf("%.3f %.3f %s%n", pos.x, pos.y, draw ? "lineto" : "moveto");
+        double x0 = x, y0 = y;
+        x += heading.dx();
+        y += heading.dy();
+        if (compact)
+            compactStep(x0, y0, x, y, draw);
+        else
+            out.point(x, y, draw ? "lineto" : "moveto");
     }
 
     @Override
@@ -48,62 +153,178 @@ public class PostScriptTurtle implements Turtle {
 
     @Override
     public void turnL() {
-        angle += delta;
+        heading.turnL();
     }
 
     @Override
     public void turnR() {
-        angle -= delta;
+        heading.turnR();
+    }
+
+    @Override
+    public void turn(int k) {
+        heading.turn(k);
     }
 
     @Override
     public void push() {
 
-        stack.push(new State((Point2D.Double) pos.clone(), angle));
-        out.println("currentpoint stroke newpath moveto");
+        stack.push(x, y, heading.angle());
+        if (!compact) // compact : la branche repart du même chemin
+            out.text("currentpoint stroke newpath moveto").newline();
     }
 
     @Override
     public void pop() {
-        State s = stack.pop();
-        out.println("stroke");
-        out.printf("%.3f %.3f newpath moveto%n", s.pos.x, s.pos.y);
-        pos = s.pos;
-        angle = s.angle;
+        if (!stack.pop())
+            throw new NoSuchElementException(); // pile vide, comme ArrayDeque.pop
+        x = stack.x();
+        y = stack.y();
+        heading.set(stack.angle());
+        if (compact) {
+            flush(); // le retour est un moveto, écrit au prochain trait
+            return;
+        }
+        out.text("stroke").newline();
+        out.point(x, y, "newpath moveto");
+    }
+
+    @Override
+    public void execute(byte[] ops, int from, int to, double[] box) {
+        for (int i = from; i < to; ++i) {
+            switch (ops[i]) {
+                case TurtleOp.DRAW -> draw();
+                case TurtleOp.MOVE -> move();
+                case TurtleOp.POP -> pop();
+                case TurtleOp.TURN_L -> {
+                    turnL();
+                    continue;
+                }
+                case TurtleOp.TURN_R -> {
+                    turnR();
+                    continue;
+                }
+                case TurtleOp.PUSH -> {
+                    push();
+                    continue;
+                }
+                case TurtleOp.STAY -> {
+                    stay();
+                    continue;
+                }
+                default -> {
+                    turn(TurtleOp.turns(ops[i])); // NONE : 0, symbole décoratif
+                    continue;
+                }
+            }
+            if (box != null)
+                TurtleOp.include(box, x, y);
+        }
+    }
+
+    /*-------------------------------- rejeu ----------------------------------*/
+
+    /**
+     * Rejoue un pas enregistré : moveto si le segment ne part pas du point
+     * courant (retour de branche), puis lineto/moveto vers son extrémité.
+     */
+    @Override
+    public void segment(double x0, double y0, double x1, double y1, boolean pen) {
+        if (compact) {
+            compactStep(x0, y0, x1, y1, pen);
+            x = x1;
+            y = y1;
+            return;
+        }
+        if (x0 != x || y0 != y)
+            out.point(x0, y0, "moveto");
+        out.point(x1, y1, pen ? "lineto" : "moveto");
+        x = x1;
+        y = y1;
+    }
+
+    /**
+     * Rejoue tout un tracé enregistré, formaté par morceaux en parallèle
+     * ({@link ChunkedOutput}). Hors mode compact, le texte est celui de
+     * {@code segments.replay(this)} ; en mode compact, un trait à cheval sur
+     * deux morceaux est écrit en deux fois et chaque morceau commence par un
+     * moveto.
+     */
+    public void replay(SegmentSource segments) {
+        flush();
+        int size = segments.size();
+        if (size == 0)
+            return;
+        PostScriptTurtle[] last = new PostScriptTurtle[1];
+        ChunkedOutput.write(size, ChunkedOutput.CHUNK, (from, to, chunkOut) -> {
+            PostScriptTurtle t;
+            if (from == 0) {
+                t = new PostScriptTurtle(chunkOut, x, y, compact);
+                t.ex = ex;
+                t.ey = ey;
+                t.pathElements = pathElements;
+            } else { // point courant PostScript inconnu : moveto forcé en mode compact
+                t = new PostScriptTurtle(chunkOut, segments.x1(from - 1), segments.y1(from - 1), compact);
+                t.ex = t.ey = Long.MIN_VALUE;
+            }
+            segments.replay(t, from, to);
+            t.flush();
+            if (to == size)
+                last[0] = t;
+        }, out);
+        x = last[0].x;
+        y = last[0].y;
+        ex = last[0].ex;
+        ey = last[0].ey;
+        pathElements = last[0].pathElements;
     }
 
     /*-------------------------------- état / unités -------------------------*/
     @Override
     public void init(Point2D p, double a) {
-        pos = new Point2D.Double(p.getX(), p.getY());
-        angle = a;
+        x = p.getX();
+        y = p.getY();
+        heading.set(a);
         stack.clear();
-        out.printf("stroke newpath %.3f %.3f moveto%n", pos.x, pos.y);
+        if (compact) {
+            flush(); // nouveau départ : simple rupture du chemin
+            return;
+        }
+        out.text("stroke newpath ").point(x, y, "moveto");
     }
 
     @Override
     public Point2D getPosition() {
-        return pos;
+        return new Point2D.Double(x, y);
+    }
+
+    @Override
+    public double getX() {
+        return x;
+    }
+
+    @Override
+    public double getY() {
+        return y;
     }
 
     @Override
     public double getAngle() {
-        return angle;
+        return heading.angle();
     }
 
     @Override
     public void setUnits(double s, double d) {
-        step = s;
-        delta = d;
+        heading.setUnits(s, d);
     }
 
     @Override
     public double getUnitStep() {
-        return step;
+        return heading.step();
     }
 
     @Override
     public double getUnitAngle() {
-        return angle;
+        return heading.unit();
     }
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+package lindenmayer;
+
+import java.awt.geom.Point2D;
+
+/**
+ * Tortue muette qui enregistre chaque pas dans un {@link SegmentBuffer}.
+ * Une seule expansion suffit alors pour connaître le bounding-box et pour
+ * alimenter ensuite n'importe quelle tortue de sortie
+ * ({@link SegmentBuffer#replay(SegmentSink)}).
+ */
+public class RecordingTurtle implements Turtle {
+    private double x, y;
+    private final Heading heading; // angle en degrés, pas et angle unitaires
+
+    private final StateStack stack = new StateStack();
+
+    private SegmentBuffer segments;
+
+    /** suites de terminaux posées par macro-op (voir setFused) */
+    private boolean fused;
+    /** dernières macro-ops demandées, et leur grammaire */
+    private MacroOps macros;
+    private Grammar macrosFor;
+
+    public RecordingTurtle(Point2D.Double pos, double initialAngle) {
+        this(pos, initialAngle, new SegmentBuffer());
+    }
+
+    /**
+     * @param segments tampon qui reçoit les pas (ajoutés à la suite)
+     */
+    public RecordingTurtle(Point2D.Double pos, double initialAngle, SegmentBuffer segments) {
+        this.x = pos.x;
+        this.y = pos.y;
+        this.heading = new Heading(initialAngle, 1.0, 90.0);
+        this.segments = segments;
+    }
+
+    /** Tracé enregistré jusqu'ici. */
+    public SegmentBuffer segments() {
+        return segments;
+    }
+
+    /**
+     * Dirige les pas suivants vers un autre tampon (mode parallèle).
+     *
+     * @return le tampon précédent
+     */
+    SegmentBuffer redirect(SegmentBuffer buffer) {
+        SegmentBuffer previous = segments;
+        segments = buffer;
+        return previous;
+    }
+
+    /** Place la tortue sans toucher à la pile ni au tampon (mode parallèle). */
+    void setState(double x, double y, double angle) {
+        this.x = x;
+        this.y = y;
+        heading.set(angle);
+    }
+
+    @Override
+    public double getX() {
+        return x;
+    }
+
+    @Override
+    public double getY() {
+        return y;
+    }
+
+    @Override
+    public void init(Point2D pos, double angle) {
+        this.x = pos.getX();
+        this.y = pos.getY();
+        heading.set(angle);
+        stack.clear();
+    }
+
+    @Override
+    public void draw() {
+        advance(true);
+    }
+
+    @Override
+    public void move() {
+        advance(false);
+    }
+
+    private void advance(boolean pen) {
+        double nx = x + heading.dx();
+        double ny = y + heading.dy();
+        segments.add(x, y, nx, ny, pen);
+        x = nx;
+        y = ny;
+    }
+
+    @Override
+    public void turnR() {
+        heading.turnR();
+    }
+
+    @Override
+    public void turn(int k) {
+        heading.turn(k);
+    }
+
+    @Override
+    public void turnL() {
+        heading.turnL();
+    }
+
+    @Override
+    public void push() {
+        stack.push(x, y, heading.angle());
+    }
+
+    @Override
+    public void pop() {
+        if (stack.pop()) {
+            x = stack.x();
+            y = stack.y();
+            heading.set(stack.angle());
+        } else {
+            System.err.println("Stack is empty. Cannot pop.");
+        }
+    }
+
+    @Override
+    public void execute(byte[] ops, int from, int to, double[] box) {
+        for (int i = from; i < to; ++i) {
+            switch (ops[i]) {
+                case TurtleOp.DRAW -> draw();
+                case TurtleOp.MOVE -> move();
+                case TurtleOp.POP -> pop();
+                case TurtleOp.TURN_L -> {
+                    turnL();
+                    continue;
+                }
+                case TurtleOp.TURN_R -> {
+                    turnR();
+                    continue;
+                }
+                case TurtleOp.PUSH -> {
+                    push();
+                    continue;
+                }
+                case TurtleOp.STAY -> {
+                    stay();
+                    continue;
+                }
+                default -> {
+                    turn(TurtleOp.turns(ops[i])); // NONE : 0, symbole décoratif
+                    continue;
+                }
+            }
+            if (box != null)
+                TurtleOp.include(box, x, y);
+        }
+    }
+
+    /**
+     * Active la fusion des suites de terminaux : pendant
+     * {@link LSystem#tell(Turtle, java.util.Iterator, int)}, une suite de
+     * symboles sans règle est posée d'un bloc, segments translatés, au lieu
+     * d'être exécutée pas à pas ({@link MacroOps}) ; pour une grammaire
+     * déterministe, les sous-arbres qui se répètent le sont aussi
+     * ({@link InstanceCache}). Seulement si l'angle unitaire divise 360.
+     * Les coordonnées sont alors celles du pas à pas aux arrondis près, et
+     * non plus au bit près.
+     *
+     * @param fused vrai pour activer la fusion
+     */
+    public void setFused(boolean fused) {
+        this.fused = fused;
+    }
+
+    public boolean isFused() {
+        return fused;
+    }
+
+    /**
+     * Macro-ops de {@code g} pour la géométrie actuelle de cette tortue,
+     * ou null sans fusion ou hors mode table.
+     */
+    MacroOps macros(Grammar g) {
+        if (!fused)
+            return null;
+        if (macrosFor != g || !macros.fits(heading)) {
+            macros = MacroOps.of(g, heading);
+            macrosFor = macros == null ? null : g;
+        }
+        return macros;
+    }
+
+    /**
+     * Exécute {@code g.rhsOp[from .. to-1]} d'un bloc : segments de la
+     * macro translatés à la position courante, puis déplacement et virages
+     * nets ({@link MacroOps}).
+     *
+     * @return faux, sans rien faire, si la suite n'est pas fusionnable ou
+     *         si la géométrie a changé : à exécuter pas à pas
+     */
+    boolean stamp(MacroOps ops, int from, int to, double[] box) {
+        if (!ops.fits(heading))
+            return false;
+        MacroOps.Macro m = ops.macro(from, to, heading.index());
+        if (m == null)
+            return false;
+        stamp(m, box);
+        return true;
+    }
+
+    /**
+     * Pose une suite ou un sous-arbre enregistré dans le repère local de
+     * l'orientation courante : segments translatés, puis déplacement et
+     * virages nets.
+     */
+    void stamp(MacroOps.Macro m, double[] box) {
+        segments.append(m.local, x, y);
+        if (box != null && m.visited != null) {
+            TurtleOp.include(box, x + m.visited[0], y + m.visited[1]);
+            TurtleOp.include(box, x + m.visited[2], y + m.visited[3]);
+        }
+        x += m.dx;
+        y += m.dy;
+        heading.turn(m.turns);
+    }
+
+    /** Orientation courante dans la table de vecteurs (mode table). */
+    int headingIndex() {
+        return heading.index();
+    }
+
+    /** Virages depuis l'orientation de départ de la table (mode table). */
+    int headingTurns() {
+        return (int) heading.turns();
+    }
+
+    @Override
+    public Point2D getPosition() {
+        return new Point2D.Double(x, y);
+    }
+
+    @Override
+    public double getAngle() {
+        return heading.angle();
+    }
+
+    @Override
+    public void setUnits(double step, double delta) {
+        heading.setUnits(step, delta);
+    }
+
+    @Override
+    public double getUnitStep() {
+        return heading.step();
+    }
+
+    @Override
+    public double getUnitAngle() {
+        return heading.unit();
+    }
+}
@@ -0,0 +1,21 @@
+package lindenmayer;
+
+/**
+ * Déplacement rigide dans le repère de la tortue : avance (dx, dy) pour
+ * une orientation de départ de 0°, puis rotation de dθ degrés. Effet net
+ * d'un morceau de dérivation sans push/pop non appariés ; les déplacements
+ * forment un monoïde pour {@link #then(Rigid)}.
+ */
+record Rigid(double dx, double dy, double dtheta) {
+    /** Déplacement nul. */
+    static final Rigid IDENTITY = new Rigid(0, 0, 0);
+
+    /** Ce déplacement suivi de {@code next}. */
+    Rigid then(Rigid next) {
+        double rad = Math.toRadians(dtheta);
+        double cos = Math.cos(rad), sin = Math.sin(rad);
+        return new Rigid(dx + next.dx * cos - next.dy * sin,
+                dy + next.dx * sin + next.dy * cos,
+                dtheta + next.dtheta);
+    }
+}
@@ -0,0 +1,218 @@
+package lindenmayer;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Accès direct dans la génération n d'une grammaire déterministe.
+ *
+ * <p>Avec la longueur de chaque sous-dérivation (symbole, niveau), on
+ * descend de l'axiome jusqu'au k-ième symbole en sautant les sous-arbres
+ * entiers qui le précèdent : O(n·|membre droit|) au lieu d'un temps
+ * proportionnel à k. Si l'on suit aussi la tortue, chaque sous-arbre sauté
+ * est appliqué d'un coup par son déplacement net ({@link Rigid}), ce qui
+ * demande des crochets équilibrés ({@link Grammar#bracketsBalanced()}) ;
+ * l'état obtenu égale celui d'une exécution pas à pas, à l'arrondi près.
+ */
+final class Seek {
+    private final Grammar g;
+    private final int n;
+    /** (niveau, symbole) -> nombre de symboles exécutés, saturé */
+    private final long[] len;
+
+    Seek(Grammar g, int n) {
+        if (!g.deterministic)
+            throw new IllegalStateException("Règles aléatoires : accès direct impossible");
+        this.g = g;
+        this.n = n;
+        this.len = g.lengths(n);
+    }
+
+    /** Nombre de symboles de la génération n de {@code seq}, saturé. */
+    long length(int[] seq) {
+        long total = 0;
+        for (int id : seq)
+            total = Grammar.saturatedAdd(total, len[n * g.size() + id]);
+        return total;
+    }
+
+    /** Curseur placé sur le symbole {@code from} de la génération n de {@code seq}. */
+    Cursor cursor(int[] seq, long from) {
+        Cursor c = new Cursor(seq, null);
+        c.seek(from);
+        return c;
+    }
+
+    /**
+     * Curseur placé sur le symbole {@code from}, avec l'état qu'aurait une
+     * tortue partie de (x, y, angle) juste avant de l'exécuter.
+     */
+    Cursor cursor(int[] seq, long from, double step, double unitAngle, double x, double y, double angle) {
+        if (!g.bracketsBalanced())
+            throw new IllegalStateException("Crochets non équilibrés : accès direct impossible");
+        Cursor c = new Cursor(seq, moves(step, unitAngle));
+        c.x = x;
+        c.y = y;
+        c.angle = angle;
+        c.seek(from);
+        return c;
+    }
+
+    /** (niveau, symbole) -> déplacement net de la sous-dérivation. */
+    private Rigid[] moves(double step, double unitAngle) {
+        int size = g.size();
+        Rigid[] moves = new Rigid[(n + 1) * size];
+        for (int s = 0; s < size; ++s) {
+            moves[s] = switch (g.op[s]) {
+                case TurtleOp.DRAW, TurtleOp.MOVE -> new Rigid(step, 0, 0);
+                case TurtleOp.TURN_L -> new Rigid(0, 0, unitAngle);
+                case TurtleOp.TURN_R -> new Rigid(0, 0, -unitAngle);
+                default -> Rigid.IDENTITY;
+            };
+        }
+        for (int level = 1; level <= n; ++level) {
+            for (int s = 0; s < size; ++s) {
+                Rigid m = moves[s];
+                if (g.altCount[s] > 0) {
+                    int a = g.altStart[s], depth = 0;
+                    m = Rigid.IDENTITY;
+                    for (int i = g.rhsStart[a]; i < g.rhsStart[a + 1]; ++i) {
+                        int c = g.rhs[i];
+                        if (g.op[c] == TurtleOp.PUSH)
+                            ++depth;
+                        else if (g.op[c] == TurtleOp.POP)
+                            --depth;
+                        else if (depth == 0) // une branche [ ... ] rend l'état intact
+                            m = m.then(moves[(level - 1) * size + c]);
+                    }
+                }
+                moves[level * size + s] = m;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Parcours en profondeur repris au milieu de la génération : même pile
+     * de cadres que {@link Expander}, mais itérée à la demande.
+     */
+    final class Cursor {
+        private int[][] src = new int[16][];
+        private int[] pos = new int[16], end = new int[16], level = new int[16];
+        private int top;
+
+        /** déplacements nets, ou null si la tortue n'est pas suivie */
+        private final Rigid[] moves;
+        /** état de la tortue avant le symbole courant */
+        double x, y, angle;
+        /** états empilés et pas encore dépilés : triplets (x, y, angle) */
+        double[] stack = new double[24];
+        int depth;
+
+        private Cursor(int[] seq, Rigid[] moves) {
+            this.moves = moves;
+            src[0] = seq;
+            end[0] = seq.length;
+            level[0] = n;
+            top = 1;
+        }
+
+        /** Saute les {@code k} premiers symboles, sous-arbre par sous-arbre. */
+        private void seek(long k) {
+            int size = g.size();
+            while (top > 0) {
+                int f = top - 1;
+                if (pos[f] == end[f]) {
+                    --top;
+                    continue;
+                }
+                int c = src[f][pos[f]];
+                long w = len[level[f] * size + c];
+                if (k >= w) { // sous-arbre entier avant la cible
+                    k -= w;
+                    ++pos[f];
+                    if (moves != null)
+                        skip(c, level[f]);
+                } else if (level[f] > 0 && g.altCount[c] > 0) { // la cible est dedans
+                    ++pos[f];
+                    enter(c, level[f] - 1);
+                } else {
+                    return; // la cible est ce symbole
+                }
+            }
+        }
+
+        private void enter(int id, int lvl) {
+            if (top == pos.length) {
+                src = Arrays.copyOf(src, 2 * top);
+                pos = Arrays.copyOf(pos, 2 * top);
+                end = Arrays.copyOf(end, 2 * top);
+                level = Arrays.copyOf(level, 2 * top);
+            }
+            int a = g.altStart[id];
+            src[top] = g.rhs;
+            pos[top] = g.rhsStart[a];
+            end[top] = g.rhsStart[a + 1];
+            level[top] = lvl;
+            ++top;
+        }
+
+        /** Applique à l'état le sous-arbre sauté ({@code id}, {@code lvl}). */
+        private void skip(int id, int lvl) {
+            if (lvl > 0 && g.altCount[id] > 0) {
+                Rigid m = moves[lvl * g.size() + id];
+                double rad = Math.toRadians(angle);
+                double cos = Math.cos(rad), sin = Math.sin(rad);
+                x += m.dx() * cos - m.dy() * sin;
+                y += m.dx() * sin + m.dy() * cos;
+                angle += m.dtheta();
+                return;
+            }
+            switch (g.op[id]) {
+                case TurtleOp.DRAW, TurtleOp.MOVE -> {
+                    double rad = Math.toRadians(angle);
+                    x += moves[id].dx() * Math.cos(rad);
+                    y += moves[id].dx() * Math.sin(rad);
+                }
+                case TurtleOp.TURN_L, TurtleOp.TURN_R -> angle += moves[id].dtheta();
+                case TurtleOp.PUSH -> {
+                    if (3 * depth + 3 > stack.length)
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    stack[3 * depth] = x;
+                    stack[3 * depth + 1] = y;
+                    stack[3 * depth + 2] = angle;
+                    ++depth;
+                }
+                case TurtleOp.POP -> {
+                    if (depth > 0) { // sinon pile vide : ignoré, comme la tortue
+                        --depth;
+                        x = stack[3 * depth];
+                        y = stack[3 * depth + 1];
+                        angle = stack[3 * depth + 2];
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        boolean hasNext() {
+            while (top > 0 && pos[top - 1] == end[top - 1])
+                --top;
+            return top > 0;
+        }
+
+        /** Ordinal du symbole suivant de la génération n (l'état n'est plus suivi). */
+        int next() {
+            while (hasNext()) {
+                int f = top - 1;
+                int c = src[f][pos[f]++];
+                if (level[f] > 0 && g.altCount[c] > 0)
+                    enter(c, level[f] - 1);
+                else
+                    return c;
+            }
+            throw new NoSuchElementException();
+        }
+    }
+}
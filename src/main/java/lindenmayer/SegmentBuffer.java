@@ -0,0 +1,155 @@
+package lindenmayer;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Tampon de segments en colonnes primitives (x0, y0, x1, y1, crayon) :
+ * un tracé enregistré une seule fois, puis rejoué vers n'importe quelle
+ * {@link SegmentSink}. Le bounding-box des extrémités est tenu à jour
+ * à chaque ajout. Voir aussi {@link SegmentStore}, pour le garder sur disque.
+ */
+public final class SegmentBuffer implements SegmentSource {
+    private double[] x0, y0, x1, y1;
+    private boolean[] pen;
+    private int size;
+
+    private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+    public SegmentBuffer() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity nombre de segments prévus (le tampon grandit au besoin)
+     */
+    public SegmentBuffer(int capacity) {
+        capacity = Math.max(capacity, 16);
+        x0 = new double[capacity];
+        y0 = new double[capacity];
+        x1 = new double[capacity];
+        y1 = new double[capacity];
+        pen = new boolean[capacity];
+    }
+
+    /** Ajoute un segment à la fin du tracé. */
+    public void add(double ax, double ay, double bx, double by, boolean draw) {
+        if (size == x0.length)
+            grow(size + 1);
+        x0[size] = ax;
+        y0[size] = ay;
+        x1[size] = bx;
+        y1[size] = by;
+        pen[size] = draw;
+        ++size;
+        include(ax, ay);
+        include(bx, by);
+    }
+
+    /** Ajoute, dans l'ordre, tous les segments d'un autre tampon. */
+    public void append(SegmentBuffer other) {
+        int n = other.size;
+        if (size + n > x0.length)
+            grow(size + n);
+        System.arraycopy(other.x0, 0, x0, size, n);
+        System.arraycopy(other.y0, 0, y0, size, n);
+        System.arraycopy(other.x1, 0, x1, size, n);
+        System.arraycopy(other.y1, 0, y1, size, n);
+        System.arraycopy(other.pen, 0, pen, size, n);
+        size += n;
+        if (n > 0) {
+            include(other.minX, other.minY);
+            include(other.maxX, other.maxY);
+        }
+    }
+
+    /**
+     * Ajoute, dans l'ordre, tous les segments d'un autre tampon translatés
+     * de (tx, ty) : un tracé enregistré dans un repère local, posé à la
+     * position de la tortue.
+     */
+    public void append(SegmentBuffer other, double tx, double ty) {
+        int n = other.size;
+        if (size + n > x0.length)
+            grow(size + n);
+        for (int i = 0; i < n; ++i) {
+            x0[size + i] = other.x0[i] + tx;
+            y0[size + i] = other.y0[i] + ty;
+            x1[size + i] = other.x1[i] + tx;
+            y1[size + i] = other.y1[i] + ty;
+        }
+        System.arraycopy(other.pen, 0, pen, size, n);
+        size += n;
+        if (n > 0) { // l'addition est monotone : même bornes que point par point
+            include(other.minX + tx, other.minY + ty);
+            include(other.maxX + tx, other.maxY + ty);
+        }
+    }
+
+    private void grow(int min) {
+        int cap = Math.max(min, x0.length + (x0.length >> 1));
+        x0 = Arrays.copyOf(x0, cap);
+        y0 = Arrays.copyOf(y0, cap);
+        x1 = Arrays.copyOf(x1, cap);
+        y1 = Arrays.copyOf(y1, cap);
+        pen = Arrays.copyOf(pen, cap);
+    }
+
+    private void include(double x, double y) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+    }
+
+    /** Vide le tampon (la capacité est conservée). */
+    public void clear() {
+        size = 0;
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Nombre de segments enregistrés. */
+    public int size() {
+        return size;
+    }
+
+    public double x0(int i) {
+        return x0[i];
+    }
+
+    public double y0(int i) {
+        return y0[i];
+    }
+
+    public double x1(int i) {
+        return x1[i];
+    }
+
+    public double y1(int i) {
+        return y1[i];
+    }
+
+    /** Vrai si le segment {@code i} est un trait, faux pour un déplacement. */
+    public boolean pen(int i) {
+        return pen[i];
+    }
+
+    /**
+     * Bounding-box des extrémités de tous les segments.
+     *
+     * @return rectangle couvrant le tracé, ou null si le tampon est vide
+     */
+    public Rectangle2D getBounds() {
+        if (size == 0)
+            return null;
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /** Rejoue les segments {@code from .. to-1}. */
+    public void replay(SegmentSink sink, int from, int to) {
+        for (int i = from; i < to; ++i)
+            sink.segment(x0[i], y0[i], x1[i], y1[i], pen[i]);
+    }
+}
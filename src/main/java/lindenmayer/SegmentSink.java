@@ -0,0 +1,18 @@
+package lindenmayer;
+
+/**
+ * Destination d'un tracé enregistré : reçoit les segments d'un
+ * {@link SegmentBuffer} dans l'ordre où la tortue les a parcourus.
+ * Les tortues de sortie ({@link PostScriptTurtle}, {@link SwingTurtle})
+ * l'implémentent pour rejouer un tracé sans refaire la réécriture.
+ */
+@FunctionalInterface
+public interface SegmentSink {
+    /**
+     * Un pas de la tortue, de (x0, y0) à (x1, y1).
+     *
+     * @param pen vrai pour un trait ({@link Turtle#draw()}), faux pour un
+     *            déplacement ({@link Turtle#move()})
+     */
+    void segment(double x0, double y0, double x1, double y1, boolean pen);
+}
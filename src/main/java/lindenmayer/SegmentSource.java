@@ -0,0 +1,39 @@
+package lindenmayer;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Tracé enregistré, lu segment par segment : un {@link SegmentBuffer} en
+ * mémoire, ou un fichier projeté de {@link SegmentStore}. Les tortues de
+ * sortie rejouent l'un comme l'autre.
+ */
+public interface SegmentSource {
+    /** Nombre de segments enregistrés. */
+    int size();
+
+    double x0(int i);
+
+    double y0(int i);
+
+    double x1(int i);
+
+    double y1(int i);
+
+    /** Vrai si le segment {@code i} est un trait, faux pour un déplacement. */
+    boolean pen(int i);
+
+    /**
+     * Bounding-box des extrémités de tous les segments.
+     *
+     * @return rectangle couvrant le tracé, ou null s'il n'y a aucun segment
+     */
+    Rectangle2D getBounds();
+
+    /** Rejoue les segments {@code from .. to-1}. */
+    void replay(SegmentSink sink, int from, int to);
+
+    /** Rejoue tout le tracé, dans l'ordre d'enregistrement. */
+    default void replay(SegmentSink sink) {
+        replay(sink, 0, size());
+    }
+}
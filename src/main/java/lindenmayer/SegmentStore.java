@@ -0,0 +1,355 @@
+package lindenmayer;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.json.JSONObject;
+
+/**
+ * Tracés enregistrés gardés sur disque, d'un lancement à l'autre : un
+ * fichier par clé dans un répertoire, relu par {@link FileChannel#map}
+ * sans copie. Le fichier projeté se rejoue directement vers une tortue de
+ * sortie ({@link Segments}, un {@link SegmentSource}).
+ *
+ * <p>Format (version {@link #VERSION}), petit-boutiste :
+ * <pre>
+ *   int    magie « LSEG »
+ *   int    version
+ *   int    nombre de segments n
+ *   int    0 (réservé)
+ *   double minX, minY, maxX, maxY   bounding-box du dessin (tell)
+ *   double minX, minY, maxX, maxY   bounding-box des extrémités des segments
+ *   double[n] x0, y0, x1, y1        en colonnes, comme SegmentBuffer
+ *   byte[n]   crayon (1 trait, 0 déplacement)
+ * </pre>
+ * Un fichier d'une autre version, ou tronqué, est ignoré comme s'il était
+ * absent : il sera réécrit.
+ *
+ * <p>Un fichier est écrit à côté sous un nom temporaire (projeté lui
+ * aussi), forcé sur disque, puis renommé d'un coup sur son nom définitif ;
+ * il n'est plus jamais modifié ensuite. Plusieurs processus peuvent donc
+ * partager le répertoire : un lecteur voit l'ancien fichier ou le nouveau,
+ * entier, et une projection en cours garde l'ancien même s'il est remplacé
+ * ou supprimé.
+ *
+ * <p>Le répertoire est borné en octets ({@link #LIMIT} par défaut) : après
+ * chaque écriture, les fichiers les moins récemment utilisés (date de
+ * modification, remise à jour à chaque lecture) sont supprimés, ainsi que
+ * les fichiers temporaires abandonnés par un processus interrompu.
+ */
+public final class SegmentStore {
+    /** Version du format ; à changer à toute modification de la disposition. */
+    public static final int VERSION = 1;
+    /** Taille du répertoire par défaut, en octets. */
+    public static final long LIMIT = 4L << 30;
+
+    private static final int MAGIC = 0x4C534547; // « LSEG »
+    private static final int HEADER = 16 + 8 * 8;
+    /** Octets par segment : quatre doubles et le crayon. */
+    private static final int SEGMENT_BYTES = 4 * 8 + 1;
+    /** Une projection est limitée à 2 Gio. */
+    static final int MAX_SEGMENTS = (Integer.MAX_VALUE - HEADER) / SEGMENT_BYTES;
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final String SUFFIX = ".seg", TEMP = ".tmp";
+    /** Un fichier temporaire plus vieux est abandonné. */
+    private static final Duration STALE = Duration.ofHours(1);
+
+    /** rw-r--r-- : createTempFile ne donne l'accès qu'au propriétaire */
+    private static final Set<PosixFilePermission> READABLE = PosixFilePermissions.fromString("rw-r--r--");
+
+    private final Path dir;
+    private final long maxBytes;
+
+    /** @param dir répertoire des fichiers, créé au besoin */
+    public SegmentStore(Path dir) throws IOException {
+        this(dir, LIMIT);
+    }
+
+    /**
+     * @param dir      répertoire des fichiers, créé au besoin
+     * @param maxBytes taille du répertoire, en octets
+     */
+    public SegmentStore(Path dir, long maxBytes) throws IOException {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("Budget négatif : " + maxBytes);
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Clé d'une génération : empreinte de la spécification
+     * ({@link GenerationCache#hash(JSONObject)}), n et graine. La graine
+     * n'a de sens que pour une grammaire aléatoire ; passer 0 sinon.
+     */
+    public static String key(JSONObject spec, int n, long seed) {
+        return GenerationCache.hash(spec) + "-" + n + "-" + seed;
+    }
+
+    /**
+     * Clé de la génération n de {@code sys}, initialisé par
+     * {@code spec} ; null si ses choix de règles changent d'un lancement à
+     * l'autre (grammaire aléatoire sans « seed » dans la spécification :
+     * graine tirée au hasard), le tracé ne servirait jamais deux fois.
+     */
+    public static String key(LSystem sys, JSONObject spec, int n) {
+        if (sys.grammar().deterministic)
+            return key(spec, n, 0);
+        return spec.has("seed") ? key(spec, n, sys.getSeed()) : null;
+    }
+
+    /** Fichier de la clé, qu'il existe ou non. */
+    public Path path(String key) {
+        if (!KEY.matcher(key).matches() || key.startsWith("."))
+            throw new IllegalArgumentException("Clé invalide : " + key);
+        return dir.resolve(key + SUFFIX);
+    }
+
+    /**
+     * Enregistre le tracé sous la clé, en remplaçant d'un coup le fichier
+     * existant, puis ramène le répertoire sous sa taille maximale.
+     *
+     * @param bounds bounding-box du dessin, telle que rendue par tell
+     * @return faux, sans rien écrire, si le fichier dépasserait à lui seul la
+     *         taille du répertoire, ou si le tracé dépasse
+     *         {@link #MAX_SEGMENTS} (trop grand pour un fichier projeté)
+     */
+    public boolean put(String key, SegmentSource segments, Rectangle2D bounds) throws IOException {
+        Path target = path(key);
+        int n = segments.size();
+        if (n > MAX_SEGMENTS || HEADER + (long) n * SEGMENT_BYTES > maxBytes)
+            return false;
+        Path tmp = Files.createTempFile(dir, key + ".", TEMP);
+        try {
+            if (Files.getFileStore(tmp).supportsFileAttributeView(PosixFileAttributeView.class))
+                Files.setPosixFilePermissions(tmp, READABLE); // lisible des autres processus
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) n * SEGMENT_BYTES);
+                map.order(ByteOrder.LITTLE_ENDIAN);
+                map.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0);
+                putBox(map, bounds);
+                putBox(map, segments.getBounds());
+                DoubleBuffer x0 = column(map, 0, n), y0 = column(map, 1, n);
+                DoubleBuffer x1 = column(map, 2, n), y1 = column(map, 3, n);
+                ByteBuffer pen = map.slice(HEADER + 32 * n, n);
+                for (int i = 0; i < n; ++i) {
+                    x0.put(i, segments.x0(i));
+                    y0.put(i, segments.y0(i));
+                    x1.put(i, segments.x1(i));
+                    y1.put(i, segments.y1(i));
+                    pen.put(i, (byte) (segments.pen(i) ? 1 : 0));
+                }
+                map.force(); // contenu sur disque avant le renommage
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp); // après un échec seulement
+        }
+        trim(target);
+        return true;
+    }
+
+    /**
+     * Supprime les fichiers les moins récemment utilisés jusqu'à revenir
+     * sous la taille maximale, sauf {@code keep}, et les fichiers
+     * temporaires abandonnés. Un fichier supprimé entre-temps par un autre
+     * processus est simplement sauté.
+     */
+    private void trim(Path keep) throws IOException {
+        record Entry(Path path, long size, FileTime used) {
+        }
+        List<Entry> files = new ArrayList<>();
+        long total = 0;
+        FileTime stale = FileTime.from(Instant.now().minus(STALE));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                    if (name.endsWith(TEMP)) {
+                        if (attrs.lastModifiedTime().compareTo(stale) < 0)
+                            Files.deleteIfExists(p);
+                    } else if (name.endsWith(SUFFIX)) {
+                        files.add(new Entry(p, attrs.size(), attrs.lastModifiedTime()));
+                        total += attrs.size();
+                    }
+                } catch (NoSuchFileException e) {
+                    // supprimé par un autre processus
+                }
+            }
+        }
+        files.sort(Comparator.comparing(Entry::used));
+        for (Iterator<Entry> it = files.iterator(); total > maxBytes && it.hasNext();) {
+            Entry e = it.next();
+            if (e.path.equals(keep))
+                continue;
+            Files.deleteIfExists(e.path);
+            total -= e.size;
+        }
+    }
+
+    /** Taille des fichiers du répertoire, en octets. */
+    public long bytes() throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : stream) {
+                try {
+                    total += Files.size(p);
+                } catch (NoSuchFileException e) {
+                    // supprimé par un autre processus
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Tracé de la clé, projeté en lecture seule.
+     *
+     * @return null si le fichier est absent, d'une autre version ou tronqué
+     */
+    public Segments get(String key) throws IOException {
+        Path path = path(key);
+        MappedByteBuffer map;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER || size > Integer.MAX_VALUE)
+                return null;
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size); // reste valide après fermeture
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION)
+            return null;
+        int n = map.getInt(8);
+        if (n < 0 || n > MAX_SEGMENTS || map.capacity() != HEADER + (long) n * SEGMENT_BYTES)
+            return null;
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now())); // récemment utilisé
+        } catch (IOException e) {
+            // fichier d'un autre utilisateur, ou supprimé : l'ordre d'éviction reste approximatif
+        }
+        return new Segments(map, n);
+    }
+
+    /** Vrai si un fichier existe pour la clé (sans en vérifier la version). */
+    public boolean contains(String key) {
+        return Files.exists(path(key));
+    }
+
+    private static void putBox(ByteBuffer buf, Rectangle2D box) {
+        if (box == null) {
+            for (int i = 0; i < 4; ++i)
+                buf.putDouble(Double.NaN);
+            return;
+        }
+        buf.putDouble(box.getMinX()).putDouble(box.getMinY()).putDouble(box.getMaxX()).putDouble(box.getMaxY());
+    }
+
+    private static DoubleBuffer column(ByteBuffer map, int column, int size) {
+        return map.slice(HEADER + column * 8 * size, 8 * size).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    /**
+     * Tracé projeté depuis un fichier : lu en place, sans copie, par des
+     * lectures absolues. Immuable, utilisable par plusieurs fils.
+     */
+    public static final class Segments implements SegmentSource {
+        private final ByteBuffer map;
+        private final DoubleBuffer x0, y0, x1, y1;
+        private final ByteBuffer pen;
+        private final int size;
+
+        private Segments(ByteBuffer map, int size) {
+            this.map = map;
+            this.size = size;
+            this.x0 = column(map, 0, size);
+            this.y0 = column(map, 1, size);
+            this.x1 = column(map, 2, size);
+            this.y1 = column(map, 3, size);
+            this.pen = map.slice(HEADER + 32 * size, size);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public double x0(int i) {
+            return x0.get(i);
+        }
+
+        @Override
+        public double y0(int i) {
+            return y0.get(i);
+        }
+
+        @Override
+        public double x1(int i) {
+            return x1.get(i);
+        }
+
+        @Override
+        public double y1(int i) {
+            return y1.get(i);
+        }
+
+        @Override
+        public boolean pen(int i) {
+            return pen.get(i) != 0;
+        }
+
+        /** Bounding-box du dessin, enregistrée avec le tracé ; null si absente. */
+        public Rectangle2D bounds() {
+            return box(16);
+        }
+
+        @Override
+        public Rectangle2D getBounds() {
+            return size == 0 ? null : box(48);
+        }
+
+        private Rectangle2D box(int at) {
+            double minX = map.getDouble(at), minY = map.getDouble(at + 8);
+            if (Double.isNaN(minX))
+                return null;
+            return new Rectangle2D.Double(minX, minY, map.getDouble(at + 16) - minX, map.getDouble(at + 24) - minY);
+        }
+
+        @Override
+        public void replay(SegmentSink sink, int from, int to) {
+            for (int i = from; i < to; ++i)
+                sink.segment(x0.get(i), y0.get(i), x1.get(i), y1.get(i), pen.get(i) != 0);
+        }
+    }
+}
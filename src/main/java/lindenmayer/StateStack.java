@@ -0,0 +1,57 @@
+package lindenmayer;
+
+import java.util.Arrays;
+
+/**
+ * Pile d'états (x, y, angle) d'une tortue, à plat dans un {@code double[]} :
+ * ni objet par push, ni copie de {@code Point2D} par pop.
+ */
+final class StateStack {
+    private double[] data = new double[3 * 16];
+    private int depth;
+
+    void push(double x, double y, double angle) {
+        if (3 * depth + 3 > data.length)
+            data = Arrays.copyOf(data, 2 * data.length);
+        data[3 * depth] = x;
+        data[3 * depth + 1] = y;
+        data[3 * depth + 2] = angle;
+        ++depth;
+    }
+
+    /**
+     * Retire l'état du dessus ; on le lit ensuite par {@link #x()},
+     * {@link #y()} et {@link #angle()}.
+     *
+     * @return faux si la pile était vide
+     */
+    boolean pop() {
+        if (depth == 0)
+            return false;
+        --depth;
+        return true;
+    }
+
+    /** Abscisse du dernier état dépilé. */
+    double x() {
+        return data[3 * depth];
+    }
+
+    /** Ordonnée du dernier état dépilé. */
+    double y() {
+        return data[3 * depth + 1];
+    }
+
+    /** Angle du dernier état dépilé. */
+    double angle() {
+        return data[3 * depth + 2];
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    void clear() {
+        depth = 0;
+    }
+}
@@ -2,30 +2,17 @@ package lindenmayer;
 
 import java.awt.*;
 import java.awt.geom.*;
-import java.util.ArrayDeque;
-import java.util.Deque;
 
 /**
  * Une tortue qui dessine dans un Graphics2D (Swing).
  * On doit appeler flush() après avoir fini de dessiner pour revalider la zone.
  */
-public class SwingTurtle implements Turtle {
+public class SwingTurtle implements Turtle, SegmentSink {
     private final Graphics2D g2;
-    private Point2D.Double pos;
-    private double angle; // en degrés
-    private double step = 1.0; // longueur d’un pas
-    private double delta = 25; // angle unitaire
-    private final Deque<State> stack = new ArrayDeque<>();
-
-    private static class State {
-        final Point2D.Double p;
-        final double a;
-
-        State(Point2D.Double p, double a) {
-            this.p = (Point2D.Double) p.clone();
-            this.a = a;
-        }
-    }
+    private double x, y; // position courante
+    private final Heading heading; // angle en degrés, longueur d’un pas, angle unitaire
+    private final StateStack stack = new StateStack();
+    private final Line2D.Double line = new Line2D.Double(); // réutilisée à chaque trait
 
     /**
      * @param g2     le Graphics2D sur lequel on dessine
@@ -35,19 +22,34 @@ public class SwingTurtle implements Turtle {
      */
     public SwingTurtle(Graphics2D g2, double startX, double startY, double startA) {
         this.g2 = g2;
-        this.pos = new Point2D.Double(startX, startY);
-        this.angle = startA;
+        this.x = startX;
+        this.y = startY;
+        this.heading = new Heading(startA, 1.0, 25);
         // On fait un "moveto" implicite en positionnant pos
     }
 
     private void advance(boolean draw) {
-        double rad = Math.toRadians(angle);
-        double nx = pos.x + step * Math.cos(rad);
-        double ny = pos.y + step * Math.sin(rad);
+        double nx = x + heading.dx();
+        double ny = y + heading.dy();
         if (draw) {
-            g2.draw(new Line2D.Double(pos.x, pos.y, nx, ny));
+            line.setLine(x, y, nx, ny);
+            g2.draw(line);
         }
-        pos.setLocation(nx, ny);
+        x = nx;
+        y = ny;
+    }
+
+    /**
+     * Rejoue un pas enregistré (voir {@link SegmentBuffer#replay(SegmentSink)}).
+     */
+    @Override
+    public void segment(double x0, double y0, double x1, double y1, boolean pen) {
+        if (pen) {
+            line.setLine(x0, y0, x1, y1);
+            g2.draw(line);
+        }
+        x = x1;
+        y = y1;
     }
 
     @Override
@@ -67,58 +69,106 @@ public class SwingTurtle implements Turtle {
 
     @Override
     public void turnL() {
-        angle += delta;
+        heading.turnL();
     }
 
     @Override
     public void turnR() {
-        angle -= delta;
+        heading.turnR();
+    }
+
+    @Override
+    public void turn(int k) {
+        heading.turn(k);
     }
 
     @Override
     public void push() {
-        stack.push(new State(pos, angle));
+        stack.push(x, y, heading.angle());
     }
 
     @Override
     public void pop() {
-        if (!stack.isEmpty()) {
-            State s = stack.pop();
-            pos = (Point2D.Double) s.p.clone();
-            angle = s.a;
+        if (stack.pop()) {
+            x = stack.x();
+            y = stack.y();
+            heading.set(stack.angle());
+        }
+    }
+
+    @Override
+    public void execute(byte[] ops, int from, int to, double[] box) {
+        for (int i = from; i < to; ++i) {
+            switch (ops[i]) {
+                case TurtleOp.DRAW -> draw();
+                case TurtleOp.MOVE -> move();
+                case TurtleOp.POP -> pop();
+                case TurtleOp.TURN_L -> {
+                    turnL();
+                    continue;
+                }
+                case TurtleOp.TURN_R -> {
+                    turnR();
+                    continue;
+                }
+                case TurtleOp.PUSH -> {
+                    push();
+                    continue;
+                }
+                case TurtleOp.STAY -> {
+                    stay();
+                    continue;
+                }
+                default -> {
+                    turn(TurtleOp.turns(ops[i])); // NONE : 0, symbole décoratif
+                    continue;
+                }
+            }
+            if (box != null)
+                TurtleOp.include(box, x, y);
         }
     }
 
     @Override
     public void init(Point2D p, double a) {
-        this.pos = new Point2D.Double(p.getX(), p.getY());
-        this.angle = a;
+        this.x = p.getX();
+        this.y = p.getY();
+        heading.set(a);
         stack.clear();
     }
 
     @Override
     public Point2D getPosition() {
-        return new Point2D.Double(pos.x, pos.y);
+        return new Point2D.Double(x, y);
+    }
+
+    @Override
+    public double getX() {
+        return x;
+    }
+
+    @Override
+    public double getY() {
+        return y;
     }
 
     @Override
     public double getAngle() {
-        return angle;
+        return heading.angle();
     }
 
     @Override
     public void setUnits(double s, double d) {
-        this.step = s;
-        this.delta = d;
+        heading.setUnits(s, d);
     }
 
     @Override
     public double getUnitStep() {
-        return step;
+        return heading.step();
     }
 
     @Override
     public double getUnitAngle() {
-        return delta;
+        return heading.unit();
     }
 }
\ No newline at end of file
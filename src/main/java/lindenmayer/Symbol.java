@@ -30,8 +30,24 @@ package lindenmayer;
  */
 public class Symbol {
     private final char value;
+    /**
+     * Dense index given by the L-system that interned this symbol; -1 otherwise.
+     */
+    final int ordinal;
+    
     public Symbol(char c){
+        this(c, -1);
+    }
+    
+    /**
+     * Symbol interned by an L-system, with its index in the alphabet.
+     * 
+     * @param c character value
+     * @param ordinal dense index 0,1,... in the L-system's alphabet
+     */
+    Symbol(char c, int ordinal){
         this.value = c;
+        this.ordinal = ordinal;
     }
     
     @Override
@@ -49,6 +65,8 @@ public class Symbol {
      */
     @Override 
     public boolean equals(Object o) {
+    	if (this == o) // interned symbols: no type check needed
+    		return true;
     	if (o instanceof Symbol) { // false if o is null
     		Symbol that = (Symbol) o;
     		return this.value == that.value;
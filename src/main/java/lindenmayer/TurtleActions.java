@@ -0,0 +1,108 @@
+package lindenmayer;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Actions nommées de {@link Turtle#action(String)}, sans réflexion à
+ * l'appel.
+ *
+ * <p>Pour chaque couple (classe de tortue, nom), la méthode est résolue
+ * une seule fois, et l'on garde une fabrique de {@link Runnable} : une
+ * classe générée par {@link LambdaMetafactory}, qui appelle directement
+ * la méthode de la classe de la tortue, comme {@code turtle::draw}. Si la
+ * classe n'est pas accessible d'ici, on se rabat sur un {@link MethodHandle}
+ * lié à la tortue.
+ */
+final class TurtleActions {
+    private static final ClassValue<Map<String, Function<Turtle, Runnable>>> FACTORIES = new ClassValue<>() {
+        @Override
+        protected Map<String, Function<Turtle, Runnable>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private TurtleActions() {
+    }
+
+    /**
+     * @throws IllegalArgumentException si la tortue n'a pas de méthode
+     *                                  publique sans argument de ce nom
+     */
+    static Runnable action(Turtle turtle, String name) {
+        Class<? extends Turtle> type = turtle.getClass();
+        return FACTORIES.get(type).computeIfAbsent(name, n -> factory(type, n)).apply(turtle);
+    }
+
+    private static Function<Turtle, Runnable> factory(Class<?> type, String name) {
+        Method method;
+        try {
+            method = type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unrecognized action name " + name); // bad method name
+        }
+        if (!Modifier.isStatic(method.getModifiers())) {
+            try {
+                return lambda(type, method);
+            } catch (ReflectiveOperationException | LambdaConversionException | IllegalArgumentException e) {
+                // classe inaccessible d'ici : handle lié, plus bas
+            }
+        }
+        try {
+            return bound(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Inaccessible action " + name, e);
+        }
+    }
+
+    /** Fabrique générée : {@code turtle -> () -> ((type) turtle).name()}. */
+    private static Function<Turtle, Runnable> lambda(Class<?> type, Method method)
+            throws ReflectiveOperationException, LambdaConversionException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle impl = lookup.findVirtual(type, method.getName(), MethodType.methodType(method.getReturnType()));
+        CallSite site = LambdaMetafactory.metafactory(lookup, "run", MethodType.methodType(Runnable.class, type),
+                MethodType.methodType(void.class), impl, MethodType.methodType(void.class));
+        MethodHandle factory = site.getTarget().asType(MethodType.methodType(Runnable.class, Turtle.class));
+        return turtle -> {
+            try {
+                return (Runnable) factory.invokeExact(turtle);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e); // la fabrique ne fait que capturer la tortue
+            }
+        };
+    }
+
+    /** Repli : handle de la méthode, lié à la tortue à chaque action(). */
+    private static Function<Turtle, Runnable> bound(Method method) throws IllegalAccessException {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        }
+        if (Modifier.isStatic(method.getModifiers()))
+            handle = MethodHandles.dropArguments(handle, 0, Turtle.class);
+        MethodHandle invoker = handle.asType(MethodType.methodType(void.class, Turtle.class));
+        return turtle -> {
+            MethodHandle call = invoker.bindTo(turtle);
+            return () -> {
+                try {
+                    call.invokeExact();
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new RuntimeException(e); // exception when invoking the method
+                }
+            };
+        };
+    }
+}
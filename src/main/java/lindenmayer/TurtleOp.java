@@ -0,0 +1,105 @@
+package lindenmayer;
+
+/**
+ * Codes d'action de la tortue : un octet par méthode de {@link Turtle}.
+ * Table de dispatch compacte utilisée par la grammaire compilée
+ * ({@link Grammar}) à la place d'un {@code Consumer<Turtle>} par symbole,
+ * et par l'exécution en bloc {@link Turtle#execute(byte[], int, int, double[])}.
+ */
+public final class TurtleOp {
+    /** Symbole sans action (ignoré à l'exécution). */
+    public static final byte NONE = -1;
+    public static final byte STAY = 0;
+    public static final byte DRAW = 1;
+    public static final byte MOVE = 2;
+    public static final byte TURN_L = 3;
+    public static final byte TURN_R = 4;
+    public static final byte PUSH = 5;
+    public static final byte POP = 6;
+    /**
+     * Virage de k angles unitaires ({@link Turtle#turn(int)}), pour
+     * {@code 2 <= |k| <= MAX_TURNS} : code {@code TURN_BASE + k}. Seul
+     * l'optimiseur ({@link GrammarOptimizer}) en produit.
+     */
+    public static final byte TURN_BASE = 64;
+    public static final int MAX_TURNS = 56;
+
+    private TurtleOp() {
+    }
+
+    /**
+     * Code d'une action nommée comme dans le fichier JSON.
+     *
+     * @param action draw, move, turnL, turnR, stay, push ou pop (casse ignorée)
+     * @return code de l'action
+     * @throws IllegalArgumentException si l'action est inconnue
+     */
+    static byte parse(String action) {
+        return switch (action.trim().toLowerCase()) {
+            case "draw" -> DRAW;
+            case "move" -> MOVE;
+            case "turnl" -> TURN_L;
+            case "turnr" -> TURN_R;
+            case "stay" -> STAY;
+            case "push" -> PUSH;
+            case "pop" -> POP;
+            default -> throw new IllegalArgumentException("Action inconnue : " + action);
+        };
+    }
+
+    /**
+     * Code d'un virage de {@code k} angles unitaires (à gauche si k > 0) ;
+     * {@link #STAY} pour 0.
+     *
+     * @throws IllegalArgumentException si |k| dépasse {@link #MAX_TURNS}
+     */
+    static byte turn(int k) {
+        if (Math.abs(k) > MAX_TURNS)
+            throw new IllegalArgumentException("Virage trop grand : " + k);
+        return switch (k) {
+            case 0 -> STAY;
+            case 1 -> TURN_L;
+            case -1 -> TURN_R;
+            default -> (byte) (TURN_BASE + k);
+        };
+    }
+
+    /**
+     * Nombre d'angles unitaires du virage {@code op} (négatif à droite),
+     * 0 si ce n'est pas un virage.
+     */
+    public static int turns(byte op) {
+        if (op == TURN_L)
+            return 1;
+        if (op == TURN_R)
+            return -1;
+        int k = op - TURN_BASE;
+        return op > POP && Math.abs(k) <= MAX_TURNS ? k : 0;
+    }
+
+    /**
+     * Exécute une action sur la tortue ; {@link #NONE} ne fait rien.
+     */
+    public static void apply(Turtle turtle, byte op) {
+        switch (op) {
+            case DRAW -> turtle.draw();
+            case MOVE -> turtle.move();
+            case TURN_L -> turtle.turnL();
+            case TURN_R -> turtle.turnR();
+            case STAY -> turtle.stay();
+            case PUSH -> turtle.push();
+            case POP -> turtle.pop();
+            case NONE -> {
+            } // symbole décoratif
+            default -> turtle.turn(turns(op));
+        }
+    }
+
+    /** Élargit {minX, minY, maxX, maxY} au point (x, y). */
+    static void include(double[] box, double x, double y) {
+        box[0] = Math.min(box[0], x);
+        box[1] = Math.min(box[1], y);
+        box[2] = Math.max(box[2], x);
+        box[3] = Math.max(box[3], y);
+    }
+}
@@ -0,0 +1,178 @@
+package lindenmayer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Développement paresseux d'un symbole : rend un à un les symboles de sa
+ * génération, avec la même pile explicite de cadres que {@link Expander}
+ * (O(n) cadres) et les mêmes choix de règles, faits au moment d'entrer
+ * dans chaque nœud, dans l'ordre préfixe.
+ */
+final class Unfolder {
+    private final Grammar g;
+    /** source des choix de règles ; null si la grammaire est déterministe */
+    private final AbstractLSystem sys;
+    private final boolean keyed;
+
+    private int[] framePos = new int[16];
+    private int[] frameEnd = new int[16];
+    private int[] frameBase = new int[16];
+    private int[] frameLevel = new int[16];
+    private long[] frameKey = new long[16];
+    private int top;
+
+    Unfolder(Grammar g, AbstractLSystem sys) {
+        this.g = g;
+        this.sys = sys;
+        this.keyed = sys != null && sys.isCounterBased();
+    }
+
+    /**
+     * Commence le développement de {@code id} sur {@code level} réécritures
+     * (level > 0, symbole avec règles) ; le précédent doit être épuisé.
+     */
+    void start(int id, int level, long key) {
+        top = 0;
+        enter(id, level, key);
+    }
+
+    boolean hasNext() {
+        while (top > 0 && framePos[top - 1] == frameEnd[top - 1])
+            --top;
+        return top > 0;
+    }
+
+    /** Ordinal du symbole suivant de la génération. */
+    int next() {
+        while (hasNext()) {
+            int f = top - 1;
+            int pos = framePos[f]++;
+            int c = g.rhs[pos];
+            if (frameLevel[f] > 0 && g.altCount[c] > 0)
+                enter(c, frameLevel[f], keyed ? AbstractLSystem.childKey(frameKey[f], pos - frameBase[f]) : 0);
+            else
+                return c;
+        }
+        throw new NoSuchElementException();
+    }
+
+    /** Empile l'alternative choisie pour {@code id} ; ses symboles sont de niveau level-1. */
+    private void enter(int id, int level, long key) {
+        if (top == framePos.length) {
+            framePos = Arrays.copyOf(framePos, 2 * top);
+            frameEnd = Arrays.copyOf(frameEnd, 2 * top);
+            frameBase = Arrays.copyOf(frameBase, 2 * top);
+            frameLevel = Arrays.copyOf(frameLevel, 2 * top);
+            frameKey = Arrays.copyOf(frameKey, 2 * top);
+        }
+        int a;
+        if (sys != null && !keyed) // tirage séquentiel, comme Expander
+            a = g.altStart[id] + sys.rndInt(g.altCount[id]);
+        else
+            a = Expander.alternative(g, sys, id, level, key);
+        framePos[top] = frameBase[top] = g.rhsStart[a];
+        frameEnd[top] = g.rhsStart[a + 1];
+        frameLevel[top] = level - 1;
+        frameKey[top] = key;
+        ++top;
+    }
+
+    /**
+     * Symboles d'une génération, découpables aux frontières des règles :
+     * un morceau est une suite de nœuds (symbole, niveau, clé) ; on le coupe
+     * entre deux nœuds, après avoir déplié le premier s'il est seul. Les
+     * choix de règles ne doivent pas dépendre de l'ordre de parcours
+     * (grammaire déterministe ou mode compteur).
+     */
+    static final class Splitter implements Spliterator<Symbol> {
+        /** Nœud pas encore développé ; id < 0 pour un symbole étranger. */
+        private record Node(Symbol symbol, int id, int level, long key) {
+        }
+
+        private final Grammar g;
+        private final AbstractLSystem sys;
+        /** (niveau, symbole) -> longueur par la première alternative, pour estimateSize */
+        private final long[] len;
+        private final ArrayDeque<Node> pending;
+        private final Unfolder current;
+
+        /**
+         * @param symbols symboles de départ, clés childKey(ROOT_KEY, k)
+         * @param ids     leurs ordinaux (-1 si étranger)
+         */
+        Splitter(Grammar g, AbstractLSystem sys, Symbol[] symbols, int[] ids, int n) {
+            this(g, sys, g.lengths(n), new ArrayDeque<>(symbols.length));
+            int k = 0;
+            for (int i = 0; i < symbols.length; ++i) {
+                long key = ids[i] < 0 ? 0 : AbstractLSystem.childKey(AbstractLSystem.ROOT_KEY, k++);
+                pending.addLast(new Node(symbols[i], ids[i], n, key));
+            }
+        }
+
+        private Splitter(Grammar g, AbstractLSystem sys, long[] len, ArrayDeque<Node> pending) {
+            this.g = g;
+            this.sys = sys;
+            this.len = len;
+            this.pending = pending;
+            this.current = new Unfolder(g, sys);
+        }
+
+        private boolean expandable(Node node) {
+            return node.id >= 0 && node.level > 0 && g.altCount[node.id] > 0;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Symbol> action) {
+            while (!current.hasNext()) {
+                Node node = pending.pollFirst();
+                if (node == null)
+                    return false;
+                if (!expandable(node)) {
+                    action.accept(node.symbol);
+                    return true;
+                }
+                current.start(node.id, node.level, node.key);
+            }
+            action.accept(g.symbols[current.next()]);
+            return true;
+        }
+
+        @Override
+        public Spliterator<Symbol> trySplit() {
+            if (current.hasNext())
+                return null; // nœud entamé : on laisse finir
+            while (pending.size() == 1 && expandable(pending.peekFirst())) {
+                Node node = pending.pollFirst();
+                int a = Expander.alternative(g, sys, node.id, node.level, node.key);
+                for (int i = g.rhsStart[a]; i < g.rhsStart[a + 1]; ++i) {
+                    long key = AbstractLSystem.childKey(node.key, i - g.rhsStart[a]);
+                    pending.addLast(new Node(g.symbols[g.rhs[i]], g.rhs[i], node.level - 1, key));
+                }
+            }
+            int half = pending.size() / 2;
+            if (half == 0)
+                return null;
+            ArrayDeque<Node> prefix = new ArrayDeque<>(half);
+            for (int i = 0; i < half; ++i)
+                prefix.addLast(pending.pollFirst());
+            return new Splitter(g, sys, len, prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = current.hasNext() ? 1 : 0;
+            for (Node node : pending)
+                size = Grammar.saturatedAdd(size, node.id < 0 ? 1 : len[node.level * g.size() + node.id]);
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package lindenmayer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/** Tests JUnit 5 ― formatage EPS sans Formatter */
+@DisplayName("Suite de tests EpsWriter")
+class EpsWriterTest {
+
+    private static String format(double v) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EpsWriter out = new EpsWriter(bytes);
+        out.number(v);
+        out.flush();
+        return bytes.toString();
+    }
+
+    @Test
+    @DisplayName("number() ≡ %.3f : cas limites et valeurs aléatoires")
+    void matchesFormatter() {
+        double[] edges = { 0.0, -0.0, -1e-9, 0.0005, 1.0005, 0.9995, 9.9995, 2.5e-4, 123456.789, -306.0,
+                1e7, -3.5e12, Double.NaN, Double.POSITIVE_INFINITY };
+        for (double v : edges)
+            assertEquals(String.format(Locale.ROOT, "%.3f", v), format(v), "v = " + v);
+
+        Random rnd = new Random(2015);
+        for (int i = 0; i < 100_000; ++i) {
+            double v = i % 2 == 0 ? rnd.nextGaussian() * 1000 : (rnd.nextInt(2_000_000) - 1_000_000) / 2000.0;
+            assertEquals(String.format(Locale.ROOT, "%.3f", v), format(v), "v = " + v);
+        }
+    }
+
+    @Test
+    @DisplayName("PostScriptTurtle sur un PrintWriter : lignes dans l'ordre des écritures")
+    void sharedPrintWriter() {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        PostScriptTurtle turtle = new PostScriptTurtle(new Point2D.Double(0, 0), 0, out);
+        turtle.setUnits(2, 90);
+        turtle.draw();
+        out.println("stroke");
+        out.flush();
+
+        String n = System.lineSeparator();
+        assertEquals("newpath 0.000 0.000 moveto" + n + "2.000 0.000 lineto" + n + "stroke" + n, text.toString());
+    }
+
+    @Test
+    @DisplayName("milli() : décimale la plus courte")
+    void milli() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EpsWriter out = new EpsWriter(bytes);
+        for (long m : new long[] { 0, 2000, -250, 866, 1500, -1, 123456789 })
+            out.milli(m).space();
+        out.flush();
+        assertEquals("0 2 -0.25 0.866 1.5 -0.001 123456.789 ", bytes.toString());
+    }
+
+    @Test
+    @DisplayName("Mode compact : pas colinéaires fusionnés, branches sans stroke")
+    void compactPath() {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        PostScriptTurtle turtle = new PostScriptTurtle(new Point2D.Double(0, 0), 0, out);
+        turtle.setCompact(true);
+        turtle.setUnits(1, 90);
+        turtle.draw(); // F F [ + F F ] F : deux traits de 2, un trait de 2 au retour
+        turtle.draw();
+        turtle.push();
+        turtle.turnL();
+        turtle.draw();
+        turtle.draw();
+        turtle.pop();
+        turtle.move();
+        turtle.draw();
+        turtle.flush();
+        out.println("stroke");
+        out.flush();
+
+        String n = System.lineSeparator();
+        assertEquals("newpath 0.000 0.000 moveto" + n + "/l /rlineto load def /m /moveto load def" + n
+                + "2 0 l" + n + "0 2 l" + n + "3 0 m" + n + "1 0 l" + n + "stroke" + n, text.toString());
+    }
+
+    private static String replay(SegmentBuffer segments, boolean chunked, boolean compact) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EpsWriter out = new EpsWriter(bytes);
+        PostScriptTurtle turtle = new PostScriptTurtle(new Point2D.Double(0, 0), 90, out);
+        turtle.setCompact(compact);
+        if (chunked)
+            turtle.replay(segments);
+        else
+            segments.replay(turtle);
+        turtle.flush();
+        out.flush();
+        return bytes.toString();
+    }
+
+    @Test
+    @DisplayName("Rejeu par morceaux parallèles ≡ rejeu séquentiel")
+    void chunkedReplay() {
+        SegmentBuffer segments = new SegmentBuffer();
+        Random rnd = new Random(16);
+        double x = 0, y = 0;
+        for (int i = 0; i < 3 * ChunkedOutput.CHUNK + 123; ++i) {
+            if (rnd.nextInt(50) == 0) { // retour de branche
+                x = rnd.nextInt(100);
+                y = rnd.nextInt(100);
+            }
+            double a = Math.toRadians(60 * rnd.nextInt(6));
+            segments.add(x, y, x + Math.cos(a), y + Math.sin(a), rnd.nextInt(10) > 0);
+            x += Math.cos(a);
+            y += Math.sin(a);
+        }
+        assertEquals(replay(segments, false, false), replay(segments, true, false));
+
+        String compact = replay(segments, true, true); // morceaux coupés : quelques lignes de plus
+        long lines = compact.lines().count(), sequential = replay(segments, false, true).lines().count();
+        assertTrue(lines >= sequential && lines <= sequential + 2 * 3, lines + " / " + sequential);
+    }
+}
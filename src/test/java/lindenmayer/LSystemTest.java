@@ -4,8 +4,16 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.Point2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.json.JSONObject;
 import org.json.JSONTokener;
@@ -80,6 +88,19 @@ class LSystemTest {
             assertNotNull(it);
             assertTrue(it.hasNext());
         }
+
+        @Test
+        @DisplayName("2.3  Symbole non interné de même caractère → même règle")
+        void foreignSymbolUsesSameRule() {
+            sys.setAction('A', "stay");
+            sys.addRule('A', "BC");
+            Iterator<Symbol> it = sys.rewrite(new Symbol('A'));
+
+            assertNotNull(it);
+            assertEquals("B", it.next().toString());
+            assertEquals("C", it.next().toString());
+            assertFalse(it.hasNext());
+        }
     }
 
     /*
@@ -212,4 +233,811 @@ class LSystemTest {
         assertEquals(0.0, box.getMinY(), 1e-9, "ymin");
         assertEquals(2.0, box.getMaxY(), 1e-9, "ymax");
     }
-}
\ No newline at end of file
+
+    /*
+     * ------------------------------------------------------------------ *
+     * 7) Moteur itératif ≡ version récursive (règles aléatoires) *
+     * ------------------------------------------------------------------
+     */
+    private static final String HERBE = """
+            {
+              "rules"  : { "F" : ["F[+F]F[-F]F", "F[+F]F", "F[+F]F[-F]F"] },
+              "axiom"  : "F",
+              "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+              "parameters" : { "step":2, "angle":22.5, "start":[250,0,90] }
+            }""";
+
+    /** Tortue qui note chaque position atteinte par draw() et compte ses virages. */
+    private static class TraceTurtle extends FakeTurtle {
+        final List<Point2D> trace = new ArrayList<>();
+        int turnCalls;
+
+        TraceTurtle() {
+            super(new Point2D.Double(0, 0), 90);
+        }
+
+        @Override
+        public void draw() {
+            super.draw();
+            trace.add(getPosition());
+        }
+
+        @Override
+        public void turnL() {
+            super.turnL();
+            ++turnCalls;
+        }
+
+        @Override
+        public void turnR() {
+            super.turnR();
+            ++turnCalls;
+        }
+
+        @Override
+        public void turn(int k) {
+            super.turn(k);
+            ++turnCalls;
+        }
+    }
+
+    /**
+     * Même tracé, même bounding-box, même angle final qu'avec la grammaire
+     * écrite, ni optimisée ni compilée, et jamais plus de virages.
+     *
+     * @param seed graine des deux L-systèmes
+     * @param counter choix de règles en mode compteur
+     * @param compile variante compilée en classe cachée
+     * @return tortue de la variante optimisée
+     */
+    private static TraceTurtle assertSameTrace(String json, int n, long seed, boolean counter, boolean compile) {
+        JSONObject spec = new JSONObject(json);
+        TraceTurtle expected = new TraceTurtle();
+        LSystem plain = new LSystem();
+        plain.initFromJson(spec, expected);
+        plain.setOptimized(false);
+        plain.setSeed(seed);
+        plain.setCounterBased(counter);
+        plain.resetRnd();
+        Rectangle2D expectedBox = plain.tell(expected, plain.getAxiom(), n);
+
+        TraceTurtle actual = new TraceTurtle();
+        LSystem variant = new LSystem();
+        variant.initFromJson(spec, actual);
+        variant.setSeed(seed);
+        variant.setCounterBased(counter);
+        variant.resetRnd();
+        if (compile)
+            assertTrue(variant.compile());
+        Rectangle2D actualBox = variant.tell(actual, variant.getAxiom(), n);
+
+        assertEquals(expected.trace, actual.trace);
+        assertEquals(expectedBox, actualBox);
+        assertEquals(expected.getAngle(), actual.getAngle(), 1e-9);
+        assertTrue(actual.turnCalls <= expected.turnCalls);
+        return actual;
+    }
+
+    /** Génération n développée en entier, avec rewrite(). */
+    private void expand(Iterator<Symbol> seq, int n, List<Symbol> out) {
+        while (seq.hasNext()) {
+            Symbol s = seq.next();
+            Iterator<Symbol> expansion = n == 0 ? null : sys.rewrite(s);
+            if (expansion == null)
+                out.add(s);
+            else
+                expand(expansion, n - 1, out);
+        }
+    }
+
+    /** Ancienne version récursive de tell, écrite avec l'API publique. */
+    private static Rectangle2D recursiveTell(LSystem sys, Turtle turtle, Iterator<Symbol> seq, int n) {
+        Rectangle2D bbox = new Rectangle2D.Double(turtle.getPosition().getX(), turtle.getPosition().getY(), 0, 0);
+        while (seq.hasNext()) {
+            Symbol s = seq.next();
+            Iterator<Symbol> expansion = n == 0 ? null : sys.rewrite(s);
+            if (expansion == null) {
+                sys.tell(turtle, s);
+                Point2D p = turtle.getPosition();
+                bbox.add(p);
+            } else {
+                bbox = bbox.createUnion(recursiveTell(sys, turtle, expansion, n - 1));
+            }
+        }
+        return bbox;
+    }
+
+    @Test
+    @Order(6)
+    @DisplayName("7️⃣  tell() itératif reproduit la version récursive, tirages compris")
+    void testIterativeMatchesRecursive() {
+        JSONObject spec = new JSONObject(HERBE);
+
+        TraceTurtle expected = new TraceTurtle();
+        sys.initFromJson(spec, expected);
+        sys.setSeed(2015);
+        sys.resetRnd();
+        Rectangle2D expectedBox = recursiveTell(sys, expected, sys.getAxiom(), 5);
+
+        TraceTurtle actual = new TraceTurtle();
+        LSystem other = new LSystem();
+        other.initFromJson(spec, actual);
+        other.setSeed(2015);
+        other.resetRnd();
+        Rectangle2D actualBox = other.tell(actual, other.getAxiom(), 5);
+
+        assertEquals(expected.trace, actual.trace, "même tracé, segment par segment");
+        assertEquals(expectedBox, actualBox, "même bounding-box");
+    }
+
+    /*
+     * ------------------------------------------------------------------ *
+     * 8) Bounding-box analytique ≡ bounding-box simulé *
+     * ------------------------------------------------------------------
+     */
+    @Nested
+    @DisplayName("8️⃣  Groupe de tests : boundingBox() analytique")
+    class AnalyticBox {
+
+        private void assertSameBox(String json, int n) {
+            JSONObject spec = new JSONObject(json);
+            FakeTurtle probe = new FakeTurtle(new Point2D.Double(0, 0), 90);
+            sys.initFromJson(spec, probe);
+            Rectangle2D analytic = sys.boundingBox(probe, n);
+
+            LSystem other = new LSystem();
+            other.initFromJson(spec, turtle);
+            Rectangle2D simulated = other.tell(turtle, other.getAxiom(), n);
+
+            assertNotNull(analytic);
+            assertEquals(simulated.getMinX(), analytic.getMinX(), 1e-6, "xmin");
+            assertEquals(simulated.getMinY(), analytic.getMinY(), 1e-6, "ymin");
+            assertEquals(simulated.getMaxX(), analytic.getMaxX(), 1e-6, "xmax");
+            assertEquals(simulated.getMaxY(), analytic.getMaxY(), 1e-6, "ymax");
+        }
+
+        @Test
+        @DisplayName("8.1  Sierpinski (60°, sans crochets)")
+        void sierpinski() {
+            assertSameBox("""
+                    {
+                      "rules"  : { "L": ["R+L+R"], "R": ["L-R-L"] },
+                      "axiom"  : "L",
+                      "actions": { "L":"draw", "R":"draw", "+":"turnL", "-":"turnR" },
+                      "parameters" : { "step":1, "angle":60, "start":[0,0,0] }
+                    }""", 7);
+        }
+
+        @Test
+        @DisplayName("8.2  Buisson (22,5°, crochets imbriqués)")
+        void buisson() {
+            assertSameBox("""
+                    {
+                      "rules"  : { "F" : ["FF-[-F+F+F]+[+F-F-F]"] },
+                      "axiom"  : "F",
+                      "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+                      "parameters" : { "step":4, "angle":22.5, "start":[0,0,90] }
+                    }""", 4);
+        }
+
+        @Test
+        @DisplayName("8.3  Règles aléatoires ou angle 25° → null")
+        void notApplicable() {
+            FakeTurtle probe = new FakeTurtle(new Point2D.Double(0, 0), 90);
+            sys.initFromJson(new JSONObject(HERBE), probe);
+            assertNull(sys.boundingBox(probe, 3), "règles aléatoires");
+
+            LSystem other = new LSystem();
+            other.initFromJson(new JSONObject("""
+                    {
+                      "rules"  : { "F" : ["F+F"] },
+                      "axiom"  : "F",
+                      "actions": { "F":"draw", "+":"turnL" },
+                      "parameters" : { "step":1, "angle":25, "start":[0,0,90] }
+                    }"""), probe);
+            assertNull(other.boundingBox(probe, 3), "25 ne divise pas 360");
+        }
+
+        @Test
+        @DisplayName("8.4  Petit angle : résumés alloués à l'usage, null au-delà du budget")
+        void budget() {
+            String spec = """
+                    {
+                      "rules"  : { "F" : ["F+F--F+F"] },
+                      "axiom"  : "F",
+                      "actions": { "F":"draw", "+":"turnL", "-":"turnR" },
+                      "parameters" : { "step":1, "angle":%s, "start":[0,0,90] }
+                    }""";
+            assertSameBox(spec.formatted("1"), 6); // 360 orientations : dans le budget
+
+            FakeTurtle probe = new FakeTurtle(new Point2D.Double(0, 0), 90);
+            LSystem fine = new LSystem();
+            fine.initFromJson(new JSONObject(spec.formatted("0.0078125")), probe);
+            assertNull(fine.boundingBox(probe, 6), "46 080 orientations par ligne de résumés : hors budget");
+        }
+    }
+
+    /*
+     * ------------------------------------------------------------------ *
+     * 9) Estimation de la taille avant de dessiner *
+     * ------------------------------------------------------------------
+     */
+    @Nested
+    @DisplayName("9️⃣  Groupe de tests : estimate()")
+    class Estimate {
+
+        /** Tortue qui compte les draw et la profondeur de sa pile. */
+        private static class CountingTurtle extends FakeTurtle {
+            long draws, pushes;
+            int depth, maxDepth;
+
+            CountingTurtle() {
+                super(new Point2D.Double(0, 0), 90);
+            }
+
+            @Override
+            public void draw() {
+                super.draw();
+                ++draws;
+            }
+
+            @Override
+            public void push() {
+                super.push();
+                ++pushes;
+                maxDepth = Math.max(maxDepth, ++depth);
+            }
+
+            @Override
+            public void pop() {
+                super.pop();
+                --depth;
+            }
+        }
+
+        @Test
+        @DisplayName("9.1  Buisson : comptes exacts, n = 12 sans rien développer")
+        void buisson() throws IOException {
+            JSONObject spec = new JSONObject("""
+                    {
+                      "rules"  : { "F" : ["FF-[-F+F+F]+[+F-F-F]"] },
+                      "axiom"  : "F",
+                      "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+                      "parameters" : { "step":4, "angle":22.5, "start":[0,0,90] }
+                    }""");
+            CountingTurtle counter = new CountingTurtle();
+            sys.initFromJson(spec, counter);
+            sys.tell(counter, sys.getAxiom(), 4);
+
+            ExpansionEstimate e = sys.estimate(4);
+            assertTrue(e.isExact());
+            assertEquals(counter.draws, e.draws().maxSaturated());
+            assertEquals(counter.pushes, e.pushes().maxSaturated());
+            assertEquals(counter.maxDepth, e.maxDepth());
+            assertEquals(e.draws().min(), e.draws().max());
+
+            ExpansionEstimate big = sys.estimate(12);
+            assertEquals(BigInteger.valueOf(8).pow(12), big.draws().max());
+            assertEquals(12, big.maxDepth());
+            assertTrue(big.projectedEpsBytes(1000, 4) > 10 * big.draws().maxSaturated());
+
+            ByteArrayOutputStream eps = new ByteArrayOutputStream();
+            try (EpsWriter out = new EpsWriter(eps)) {
+                Main.render(spec, "buisson", 4, null, out);
+            }
+            LSystem probe = new LSystem();
+            FakeTurtle fake = new FakeTurtle(new Point2D.Double(0, 0), 90);
+            probe.initFromJson(spec, fake);
+            Rectangle2D box = probe.tell(fake, probe.getAxiom(), 4);
+            double maxAbs = Math.max(Math.max(-box.getMinX(), box.getMaxX()), Math.max(-box.getMinY(), box.getMaxY()));
+            long projected = e.projectedEpsBytes(maxAbs, 4);
+            assertTrue(projected >= eps.size(), "borne supérieure du fichier compact de Main");
+            assertTrue(projected < 2 * eps.size(), projected + " octets prévus pour " + eps.size());
+        }
+
+        @Test
+        @DisplayName("9.2  Herbe : les tirages restent dans [min, max]")
+        void herbe() {
+            JSONObject spec = new JSONObject(HERBE);
+            ExpansionEstimate e = null;
+            for (long seed = 0; seed < 5; ++seed) {
+                CountingTurtle counter = new CountingTurtle();
+                LSystem other = new LSystem();
+                other.initFromJson(spec, counter);
+                other.setSeed(seed);
+                other.resetRnd();
+                other.tell(counter, other.getAxiom(), 4);
+                e = other.estimate(4);
+
+                assertTrue(e.draws().min().longValue() <= counter.draws);
+                assertTrue(counter.draws <= e.draws().maxSaturated());
+                assertTrue(counter.maxDepth <= e.maxDepth());
+            }
+            assertFalse(e.isExact());
+            assertEquals(81, e.draws().min().longValue()); // 3^4
+            assertEquals(625, e.draws().max().longValue()); // 5^4
+            assertEquals(Math.pow(13.0 / 3, 4), e.draws().expected(), 1e-9);
+        }
+    }
+
+    /*
+     * ------------------------------------------------------------------ *
+     * 10) Accès direct dans la génération n *
+     * ------------------------------------------------------------------
+     */
+    @Nested
+    @DisplayName("🔟  Groupe de tests : window() / tellWindow()")
+    class Window {
+
+        private static final String BUISSON = """
+                {
+                  "rules"  : { "F" : ["FF-[-F+F+F]+[+F-F-F]"] },
+                  "axiom"  : "F[+F]",
+                  "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+                  "parameters" : { "step":4, "angle":22.5, "start":[0,0,90] }
+                }""";
+
+        @Test
+        @DisplayName("10.1  window(n, k, k+len) ≡ tranche de la génération complète")
+        void windowMatchesSlice() {
+            sys.initFromJson(new JSONObject(BUISSON), turtle);
+            List<Symbol> all = new ArrayList<>();
+            expand(sys.getAxiom(), 3, all);
+
+            for (int k : new int[] { 0, 1, 17, 500, all.size() - 30 }) {
+                List<Symbol> window = new ArrayList<>();
+                sys.window(3, k, k + 30).forEachRemaining(window::add);
+                assertEquals(all.subList(k, k + 30), window, "k = " + k);
+            }
+            assertFalse(sys.window(3, all.size(), all.size()).hasNext());
+            assertThrows(IndexOutOfBoundsException.class, () -> sys.window(3, 0, all.size() + 1));
+        }
+
+        @Test
+        @DisplayName("10.2  tellWindow() reprend le tracé au symbole k")
+        void tellWindowResumes() {
+            JSONObject spec = new JSONObject(BUISSON);
+            TraceTurtle full = new TraceTurtle();
+            sys.initFromJson(spec, full);
+            sys.tell(full, sys.getAxiom(), 4);
+            List<Symbol> all = new ArrayList<>();
+            expand(sys.getAxiom(), 4, all);
+
+            for (int k : new int[] { 0, 7, 1234, all.size() / 2 }) {
+                int drawsBefore = 0; // draw exécutés avant le symbole k
+                for (Symbol s : all.subList(0, k))
+                    drawsBefore += s.toString().equals("F") ? 1 : 0;
+
+                TraceTurtle part = new TraceTurtle();
+                LSystem other = new LSystem();
+                other.initFromJson(spec, part);
+                other.tellWindow(part, 4, k, all.size());
+
+                List<Point2D> expected = full.trace.subList(drawsBefore, full.trace.size());
+                assertEquals(expected.size(), part.trace.size(), "k = " + k);
+                for (int i = 0; i < expected.size(); ++i)
+                    assertEquals(0, expected.get(i).distance(part.trace.get(i)), 1e-9, "k = " + k + ", draw " + i);
+            }
+        }
+
+        @Test
+        @DisplayName("10.3  Règles aléatoires → IllegalStateException")
+        void stochastic() {
+            sys.initFromJson(new JSONObject(HERBE), turtle);
+            assertThrows(IllegalStateException.class, () -> sys.window(3, 0, 1));
+        }
+
+        @Test
+        @DisplayName("10.4  derivation() : graphe partagé, itérateur et flux parallèle")
+        void derivationDag() {
+            sys.initFromJson(new JSONObject(BUISSON), turtle);
+            List<Symbol> all = new ArrayList<>();
+            expand(sys.getAxiom(), 5, all);
+
+            Derivation d = sys.derivation(5);
+            assertEquals(all.size(), d.length());
+            assertTrue(d.nodeCount() <= 5 * 6, "au plus |alphabet|·(n+1) nœuds");
+
+            List<Symbol> iterated = new ArrayList<>();
+            d.forEach(iterated::add);
+            assertEquals(all, iterated);
+            assertEquals(all, d.stream().parallel().toList());
+
+            Derivation huge = sys.derivation(20); // ~8^20 symboles, jamais construits
+            assertEquals(sys.estimate(20).symbols().maxSaturated(), huge.length());
+            assertEquals(all.subList(0, 8), huge.stream().limit(8).toList());
+        }
+    }
+
+    /*
+     * ------------------------------------------------------------------ *
+     * 11) applyRules() paresseux et flux découpable *
+     * ------------------------------------------------------------------
+     */
+    @Nested
+    @DisplayName("⓫  Groupe de tests : applyRules() / stream()")
+    class ApplyRules {
+
+        @Test
+        @DisplayName("11.1  applyRules() ≡ développement par rewrite(), mêmes tirages")
+        void matchesRewrite() {
+            sys.initFromJson(new JSONObject(HERBE), turtle);
+            sys.setSeed(11);
+            sys.resetRnd();
+            List<Symbol> expected = new ArrayList<>();
+            expand(sys.getAxiom(), 4, expected);
+
+            sys.resetRnd();
+            List<Symbol> actual = new ArrayList<>();
+            sys.applyRules(sys.getAxiom(), 4).forEachRemaining(actual::add);
+            assertEquals(expected, actual);
+
+            List<Symbol> copied = new ArrayList<>();
+            sys.applyRules(List.of(new Symbol('?')).iterator(), 3).forEachRemaining(copied::add);
+            assertEquals("[?]", copied.toString());
+        }
+
+        @Test
+        @DisplayName("11.2  stream().parallel() : histogramme ≡ séquentiel")
+        void parallelHistogram() {
+            sys.initFromJson(new JSONObject(HERBE), turtle);
+            sys.setCounterBased(true);
+            List<Symbol> expected = new ArrayList<>();
+            sys.applyRules(sys.getAxiom(), 6).forEachRemaining(expected::add);
+
+            assertEquals(expected, sys.stream(sys.getAxiom(), 6).parallel().toList());
+            Map<String, Long> histogram = sys.stream(sys.getAxiom(), 6).parallel()
+                    .collect(Collectors.groupingBy(Symbol::toString, Collectors.counting()));
+            assertEquals(expected.stream().filter(s -> s.toString().equals("F")).count(), histogram.get("F"));
+        }
+    }
+
+    /*
+     * ------------------------------------------------------------------ *
+     * 12) Pipeline producteur/consommateur *
+     * ------------------------------------------------------------------
+     */
+    @Nested
+    @DisplayName("⓬  Groupe de tests : setPipelined()")
+    class Pipelined {
+
+        @Test
+        @DisplayName("12.1  Même tracé et mêmes tirages qu'en séquentiel, anneau rempli plusieurs fois")
+        void matchesSequential() {
+            JSONObject spec = new JSONObject(HERBE);
+            TraceTurtle expected = new TraceTurtle();
+            sys.initFromJson(spec, expected);
+            sys.setSeed(17);
+            sys.resetRnd();
+            Rectangle2D expectedBox = sys.tell(expected, sys.getAxiom(), 8);
+
+            TraceTurtle actual = new TraceTurtle();
+            LSystem other = new LSystem();
+            other.initFromJson(spec, actual);
+            other.setSeed(17);
+            other.resetRnd();
+            other.setPipelined(true);
+            Rectangle2D actualBox = other.tell(actual, other.getAxiom(), 8);
+
+            assertTrue(expected.trace.size() > OpPipeline.BATCH * OpPipeline.SLOTS, "anneau rempli plusieurs fois");
+            assertEquals(expected.trace, actual.trace);
+            assertEquals(expectedBox, actualBox);
+        }
+
+        @Test
+        @DisplayName("12.2  Une exception de la tortue arrête l'expansion et remonte")
+        void turtleFailure() {
+            sys.initFromJson(new JSONObject(HERBE), turtle);
+            sys.setPipelined(true);
+            FakeTurtle failing = new FakeTurtle(new Point2D.Double(0, 0), 90) {
+                private int draws;
+
+                @Override
+                public void draw() {
+                    if (++draws == 1000)
+                        throw new IllegalStateException("disque plein");
+                    super.draw();
+                }
+            };
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> sys.tell(failing, sys.getAxiom(), 8));
+            assertEquals("disque plein", e.getMessage());
+        }
+
+        @Test
+        @DisplayName("12.3  Départ et unités quelconques : seule la tortue de sortie a un état")
+        void startState() {
+            TraceTurtle expected = new TraceTurtle(), actual = new TraceTurtle();
+            for (TraceTurtle t : List.of(expected, actual)) {
+                t.setUnits(3, 15);
+                t.init(new Point2D.Double(-40, 7), 30);
+            }
+            sys.initFromJson(new JSONObject(HERBE), turtle); // paramètres : pas pour ces deux tortues
+            sys.setSeed(3);
+            sys.resetRnd();
+            Rectangle2D expectedBox = sys.tell(expected, sys.getAxiom(), 5);
+            sys.resetRnd();
+            sys.setPipelined(true);
+            Rectangle2D actualBox = sys.tell(actual, sys.getAxiom(), 5);
+
+            assertEquals(expected.trace, actual.trace);
+            assertEquals(expectedBox, actualBox);
+            assertEquals(expected.getAngle(), actual.getAngle(), 1e-9);
+        }
+    }
+
+    /*
+     * ------------------------------------------------------------------ *
+     * 13) Grammaire compilée en classe cachée *
+     * ------------------------------------------------------------------
+     */
+    @Nested
+    @DisplayName("⓭  Groupe de tests : compile()")
+    class Compile {
+
+        @Test
+        @DisplayName("13.1  Buisson et hexamaze : même tracé, même bounding-box")
+        void matchesExpander() {
+            assertSameTrace("""
+                    {
+                      "rules"  : { "F" : ["FF-[-F+F+F]+[+F-F-F]"] },
+                      "axiom"  : "F[+F]",
+                      "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+                      "parameters" : { "step":4, "angle":22.5, "start":[0,0,90] }
+                    }""", 4, 0, false, true);
+            assertSameTrace("""
+                    {
+                      "rules"  : { "L": ["L+R++R-L--LL-R+"], "R": ["-L+RR++R+L--L-R"] },
+                      "axiom"  : "L",
+                      "actions": { "L":"draw", "R":"draw", "+":"turnR", "-":"turnL" },
+                      "parameters" : { "step":1, "angle":60, "start":[400,600,90] }
+                    }""", 4, 0, false, true);
+        }
+
+        @Test
+        @DisplayName("13.2  Symbole sans action, symbole étranger, niveau 0")
+        void decorativeSymbols() {
+            String json = """
+                    {
+                      "rules"  : { "X" : ["F[+X]F[-X]+X"], "F" : ["FF"] },
+                      "axiom"  : "X?",
+                      "actions": { "X":"stay", "F":"move", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+                      "parameters" : { "step":1, "angle":25, "start":[0,0,90] }
+                    }""";
+            assertSameTrace(json.replace("\"move\"", "\"draw\""), 5, 0, false, true);
+            assertSameTrace(json, 0, 0, false, true);
+        }
+
+        @Test
+        @DisplayName("13.3  Grand alphabet : tableswitch et cadres étendus")
+        void largeAlphabet() {
+            StringBuilder rules = new StringBuilder(), actions = new StringBuilder();
+            for (char c = 'A'; c <= 'T'; ++c) {
+                char next = c == 'T' ? 'A' : (char) (c + 1);
+                rules.append(c == 'A' ? "" : ", ").append('"').append(c).append("\": [\"").append(c).append('+')
+                        .append(next).append("\"]");
+                actions.append('"').append(c).append("\": \"").append(c % 3 == 0 ? "move" : "draw").append("\", ");
+            }
+            String json = "{ \"rules\": {" + rules + "}, \"axiom\": \"AKT\", \"actions\": {" + actions
+                    + "\"+\": \"turnL\"}, \"parameters\": { \"step\": 1, \"angle\": 30, \"start\": [0, 0, 0] } }";
+            assertSameTrace(json, 6, 0, false, true);
+        }
+
+        @Test
+        @DisplayName("13.4  Règles aléatoires : pas de compilation")
+        void stochastic() {
+            sys.initFromJson(new JSONObject(HERBE), turtle);
+            assertFalse(sys.compile());
+        }
+    }
+
+    /*
+     * ------------------------------------------------------------------ *
+     * 14) Optimisation de la grammaire exécutée *
+     * ------------------------------------------------------------------
+     */
+    @Nested
+    @DisplayName("⓮  Groupe de tests : GrammarOptimizer")
+    class Optimizer {
+
+        private static final String DECORATED = """
+                {
+                  "rules"  : { "X" : ["F+-[+X]F[-X]+X?++++"], "Y" : ["F+-[+Y]F[-Y]+Y?++++"], "F" : ["FF", "F"] },
+                  "axiom"  : "X-Y",
+                  "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR", "?":"stay" },
+                  "parameters" : { "step":1, "angle":30, "start":[0,0,90] }
+                }""";
+
+        @Test
+        @DisplayName("14.1  Hexamaze : virages regroupés, même tracé, compilée ou non")
+        void deterministic() {
+            String hexamaze = """
+                    {
+                      "rules"  : { "L": ["L+R++R-L--LL-R+"], "R": ["-L+RR++R+L--L-R"] },
+                      "axiom"  : "L",
+                      "actions": { "L":"draw", "R":"draw", "+":"turnR", "-":"turnL" },
+                      "parameters" : { "step":1, "angle":60, "start":[400,600,90] }
+                    }""";
+            TraceTurtle t = assertSameTrace(hexamaze, 5, 0, false, false);
+            assertSameTrace(hexamaze, 5, 0, false, true);
+            assertSameTrace(DECORATED.replace("\"FF\", \"F\"", "\"FF\""), 4, 0, false, true);
+            assertTrue(t.turnCalls > 0);
+        }
+
+        @Test
+        @DisplayName("14.2  Règles aléatoires : mêmes tirages, séquentiels ou par clé")
+        void stochastic() {
+            for (long seed = 1; seed <= 5; ++seed) {
+                assertSameTrace(DECORATED, 5, seed, false, false);
+                assertSameTrace(DECORATED, 5, seed, true, false);
+            }
+            assertSameTrace(HERBE, 6, 17, false, false);
+        }
+
+        @Test
+        @DisplayName("14.3  Grammaire réécrite : décorations retirées, +- annulé, ++++ en un, X et Y confondus")
+        void rewritten() {
+            sys.initFromJson(new JSONObject(DECORATED), turtle);
+            Grammar g = sys.grammar(), opt = sys.executionGrammar();
+            int x = sys.getAxiom().next().ordinal;
+            int a = opt.altStart[x];
+            int[] rhs = Arrays.copyOfRange(opt.rhs, opt.rhsStart[a], opt.rhsStart[a + 1]);
+            int[] keys = Arrays.copyOfRange(opt.rhsKey, opt.rhsStart[a], opt.rhsStart[a + 1]);
+
+            assertEquals(13, rhs.length, "F+-[+X]F[-X]+X?++++ -> F[+X]F[-X]+X(++++)");
+            assertArrayEquals(new int[] { 0, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 15 }, keys);
+            assertEquals(4, TurtleOp.turns(opt.op[rhs[12]]));
+            assertTrue(rhs[12] >= g.size(), "virage multiple : nouvel ordinal");
+
+            int y = opt.rhs[opt.rhsStart[opt.altStart[x]] + 3];
+            assertEquals(x, y, "X produit X");
+            int yInY = -1;
+            for (int s = 0; s < g.size(); ++s)
+                if (g.symbols[s].toString().equals("Y"))
+                    yInY = opt.rhs[opt.rhsStart[opt.altStart[s]] + 3];
+            assertEquals(x, yInY, "Y se réécrit comme X : confondu avec X");
+            assertEquals(opt.altCount[x], g.altCount[x]);
+        }
+
+        @Test
+        @DisplayName("14.4  Rien à optimiser : même instance ; setOptimized(false)")
+        void unchanged() {
+            sys.initFromJson(new JSONObject("""
+                    {
+                      "rules"  : { "F" : ["F+F"] },
+                      "axiom"  : "F",
+                      "actions": { "F":"draw", "+":"turnL" },
+                      "parameters" : { "step":1, "angle":90, "start":[0,0,0] }
+                    }"""), turtle);
+            assertSame(sys.grammar(), sys.executionGrammar());
+            LSystem other = new LSystem();
+            other.initFromJson(new JSONObject(DECORATED), turtle);
+            other.setOptimized(false);
+            assertSame(other.grammar(), other.executionGrammar());
+        }
+    }
+
+    /*
+     * ------------------------------------------------------------------ *
+     * 15) Cache des générations *
+     * ------------------------------------------------------------------
+     */
+    @Nested
+    @DisplayName("⓯  Groupe de tests : GenerationCache")
+    class Generations {
+
+        private static final String CARRE = """
+                {
+                  "rules"  : { "F" : ["F+F-F-F+F"] },
+                  "axiom"  : "F",
+                  "actions": { "F":"draw", "+":"turnL", "-":"turnR" },
+                  "parameters" : { "step":2, "angle":90, "start":[10,0,0] }
+                }""";
+
+        /** Symboles et bounding-box de la génération n, par un LSystem neuf. */
+        private void assertSameGeneration(GenerationCache.Generation gen, JSONObject spec, int n, long seed) {
+            LSystem fresh = new LSystem();
+            TraceTurtle expected = new TraceTurtle();
+            fresh.initFromJson(spec, expected);
+            fresh.setSeed(seed);
+            fresh.setCounterBased(true);
+            List<String> symbols = new ArrayList<>();
+            fresh.applyRules(fresh.getAxiom(), n).forEachRemaining(s -> symbols.add(s.toString()));
+            List<String> cached = new ArrayList<>();
+            gen.symbols().forEachRemaining(s -> cached.add(s.toString()));
+            assertEquals(symbols, cached);
+            assertEquals(symbols.size(), gen.length());
+
+            Rectangle2D box = fresh.tell(expected, fresh.getAxiom(), n);
+            TraceTurtle actual = new TraceTurtle();
+            gen.init(actual);
+            assertEquals(box, gen.tell(actual));
+            assertEquals(expected.trace, actual.trace);
+            assertEquals(box, gen.bounds());
+        }
+
+        @Test
+        @DisplayName("15.1  Mêmes symboles et même tracé ; deuxième demande servie par le cache")
+        void sameAsApplyRules() {
+            GenerationCache cache = new GenerationCache();
+            JSONObject spec = new JSONObject(CARRE);
+            GenerationCache.Generation gen = cache.get(spec, 3);
+            assertSameGeneration(gen, spec, 3, 0);
+            assertSame(gen, cache.get(new JSONObject(CARRE), 3));
+            assertEquals(1, cache.hits);
+            assertEquals(2, cache.size(), "grammaire compilée et génération 3");
+        }
+
+        @Test
+        @DisplayName("15.2  Génération n+1 prolongée depuis la génération n du cache")
+        void incremental() {
+            GenerationCache cache = new GenerationCache();
+            JSONObject spec = new JSONObject(CARRE);
+            cache.get(spec, 2);
+            assertEquals(0, cache.extended);
+            for (int n = 3; n <= 5; ++n)
+                assertSameGeneration(cache.get(spec, n), spec, n, 0);
+            assertEquals(3, cache.extended);
+            assertEquals(3125 + 3124, cache.get(spec, 5).length(), "F : 5^5 ; +/- : 4·(1+5+…+5^4)");
+            assertTrue(cache.contains(spec, 5, 0));
+        }
+
+        @Test
+        @DisplayName("15.3  Règles aléatoires : une génération par graine, mode compteur")
+        void stochastic() {
+            GenerationCache cache = new GenerationCache();
+            JSONObject spec = new JSONObject(HERBE);
+            for (long seed = 1; seed <= 3; ++seed)
+                assertSameGeneration(cache.get(spec, 4, seed), spec, 4, seed);
+            assertEquals(0, cache.extended);
+            assertTrue(cache.contains(spec, 4, 2));
+            assertFalse(cache.contains(spec, 4, 4));
+            cache.get(spec, 5, 2);
+            assertEquals(0, cache.extended, "aléatoire : développée depuis l'axiome");
+        }
+
+        @Test
+        @DisplayName("15.4  Empreinte canonique : ordre des clés, écriture des nombres, graine à part")
+        void canonicalHash() {
+            JSONObject spec = new JSONObject(CARRE);
+            JSONObject same = new JSONObject("""
+                    {
+                      "parameters" : { "start":[10.0,0,0.0], "angle":90.0, "step":2 },
+                      "actions": { "-":"turnR", "F":"draw", "+":"turnL" },
+                      "axiom"  : "F",
+                      "rules"  : { "F" : ["F+F-F-F+F"] },
+                      "seed"   : 42
+                    }""");
+            assertEquals(GenerationCache.hash(spec), GenerationCache.hash(same));
+            assertNotEquals(GenerationCache.hash(spec), GenerationCache.hash(new JSONObject(CARRE.replace("90", "60"))));
+
+            GenerationCache cache = new GenerationCache();
+            GenerationCache.Generation gen = cache.get(spec, 2);
+            assertSame(gen, cache.get(same, 2), "déterministe : la graine ne compte pas");
+        }
+
+        @Test
+        @DisplayName("15.5  Mémoire bornée : les moins récemment utilisées sont évincées")
+        void bounded() {
+            JSONObject spec = new JSONObject(CARRE);
+            GenerationCache unbounded = new GenerationCache();
+            unbounded.get(spec, 4);
+            long withFour = unbounded.bytes(); // grammaire compilée et génération 4
+            unbounded.get(spec, 5);
+            long five = unbounded.bytes() - withFour;
+
+            GenerationCache tiny = new GenerationCache(five - 1);
+            assertEquals(3125 + 3124, tiny.get(spec, 5).length());
+            assertFalse(tiny.contains(spec, 5, 0), "plus grosse que le budget : pas gardée");
+
+            GenerationCache cache = new GenerationCache(withFour + five);
+            cache.get(spec, 4);
+            cache.get(spec, 3);
+            cache.get(spec, 5); // prolongée depuis la 4, qui redevient récente
+            assertEquals(withFour + five, cache.bytes());
+            assertFalse(cache.contains(spec, 3, 0), "la moins récemment utilisée, évincée");
+            assertTrue(cache.contains(spec, 4, 0));
+            assertTrue(cache.contains(spec, 5, 0));
+        }
+    }
+}
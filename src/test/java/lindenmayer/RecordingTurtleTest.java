@@ -0,0 +1,442 @@
+package lindenmayer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests JUnit 5 ― enregistrement une fois, rejeu ensuite */
+@DisplayName("Suite de tests RecordingTurtle / SegmentBuffer")
+class RecordingTurtleTest {
+
+    private static final String BUISSON = """
+            {
+              "rules"  : { "F" : ["FF-[-F+F+F]+[+F-F-F]"] },
+              "axiom"  : "F",
+              "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+              "parameters" : { "step":4, "angle":22.5, "start":[0,0,90] }
+            }""";
+
+    @Test
+    @DisplayName("Le tracé enregistré suit la FakeTurtle pas à pas")
+    void recordsSameTrajectory() {
+        JSONObject spec = new JSONObject(BUISSON);
+
+        List<Point2D> expected = new ArrayList<>();
+        FakeTurtle fake = new FakeTurtle(new Point2D.Double(0, 0), 90) {
+            @Override
+            public void draw() {
+                super.draw();
+                expected.add(getPosition());
+            }
+        };
+        LSystem sys = new LSystem();
+        sys.initFromJson(spec, fake);
+        Rectangle2D expectedBox = sys.tell(fake, sys.getAxiom(), 3);
+
+        RecordingTurtle recorder = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        LSystem other = new LSystem();
+        other.initFromJson(spec, recorder);
+        Rectangle2D box = other.tell(recorder, other.getAxiom(), 3);
+
+        SegmentBuffer segments = recorder.segments();
+        assertEquals(expected.size(), segments.size());
+        for (int i = 0; i < segments.size(); ++i) {
+            assertTrue(segments.pen(i));
+            assertEquals(expected.get(i), new Point2D.Double(segments.x1(i), segments.y1(i)), "segment " + i);
+        }
+        assertEquals(expectedBox, box);
+        assertEquals(expectedBox, segments.getBounds().createUnion(new Rectangle2D.Double(0, 0, 0, 0)));
+    }
+
+    @Test
+    @DisplayName("replay() rend les segments dans l'ordre, append() concatène")
+    void replayAndAppend() {
+        SegmentBuffer a = new SegmentBuffer(1);
+        a.add(0, 0, 1, 0, true);
+        a.add(1, 0, 1, 2, false);
+        SegmentBuffer b = new SegmentBuffer();
+        b.add(5, 5, -3, 5, true);
+        a.append(b);
+
+        List<String> seen = new ArrayList<>();
+        a.replay((x0, y0, x1, y1, pen) -> seen.add(x0 + "," + y0 + "→" + x1 + "," + y1 + (pen ? "" : " (move)")));
+
+        assertEquals(List.of("0.0,0.0→1.0,0.0", "1.0,0.0→1.0,2.0 (move)", "5.0,5.0→-3.0,5.0"), seen);
+        assertEquals(new Rectangle2D.Double(-3, 0, 8, 5), a.getBounds());
+        assertNull(new SegmentBuffer().getBounds());
+    }
+
+    @Test
+    @DisplayName("Mode parallèle (fork/join) ≡ séquentiel, segment par segment")
+    void parallelMatchesSequential() {
+        JSONObject spec = new JSONObject(BUISSON);
+
+        RecordingTurtle sequential = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        LSystem sys = new LSystem();
+        sys.initFromJson(spec, sequential);
+        Rectangle2D expectedBox = sys.tell(sequential, sys.getAxiom(), 6);
+
+        RecordingTurtle parallel = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        LSystem other = new LSystem();
+        other.setParallel(true);
+        other.initFromJson(spec, parallel);
+        Rectangle2D box = other.tell(parallel, other.getAxiom(), 6);
+
+        SegmentBuffer expected = sequential.segments(), actual = parallel.segments();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.x0(i), actual.x0(i), "x0 " + i);
+            assertEquals(expected.y0(i), actual.y0(i), "y0 " + i);
+            assertEquals(expected.x1(i), actual.x1(i), "x1 " + i);
+            assertEquals(expected.y1(i), actual.y1(i), "y1 " + i);
+        }
+        assertEquals(expectedBox, box);
+        assertEquals(sequential.getPosition(), parallel.getPosition());
+        assertEquals(sequential.getAngle(), parallel.getAngle());
+    }
+
+    @Test
+    @DisplayName("Mode parallèle, courbe sans crochets (préfixe) ≡ séquentiel à l'arrondi près")
+    void parallelCurveMatchesSequential() {
+        JSONObject spec = new JSONObject("""
+                {
+                  "rules"  : { "L": ["R+L+R"], "R": ["L-R-L"] },
+                  "axiom"  : "L",
+                  "actions": { "L":"draw", "R":"draw", "+":"turnL", "-":"turnR" },
+                  "parameters" : { "step":1, "angle":60, "start":[0,0,0] }
+                }""");
+
+        RecordingTurtle sequential = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        LSystem sys = new LSystem();
+        sys.initFromJson(spec, sequential);
+        Rectangle2D expectedBox = sys.tell(sequential, sys.getAxiom(), 10);
+
+        RecordingTurtle parallel = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        LSystem other = new LSystem();
+        other.setParallel(true);
+        other.initFromJson(spec, parallel);
+        Rectangle2D box = other.tell(parallel, other.getAxiom(), 10);
+
+        SegmentBuffer expected = sequential.segments(), actual = parallel.segments();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i += 97) {
+            assertEquals(expected.x1(i), actual.x1(i), 1e-6, "x1 " + i);
+            assertEquals(expected.y1(i), actual.y1(i), 1e-6, "y1 " + i);
+        }
+        assertEquals(expectedBox.getMinX(), box.getMinX(), 1e-6);
+        assertEquals(expectedBox.getMaxY(), box.getMaxY(), 1e-6);
+        assertEquals(sequential.getPosition().distance(parallel.getPosition()), 0, 1e-6);
+        assertEquals(sequential.getAngle(), parallel.getAngle(), 1e-9);
+
+        // résumés (symbole, niveau) : départ à l'origine, orienté à 0°
+        Rigid move = CurveScan.moves(sys.grammar(), 10, 1, 60)[10][sys.axiomOrdinals()[0]];
+        assertEquals(sequential.getX(), move.dx(), 1e-6);
+        assertEquals(sequential.getY(), move.dy(), 1e-6);
+        assertEquals(sequential.getAngle(), move.dtheta(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Mode compteur : grammaire stochastique, parallèle ≡ séquentiel")
+    void counterBasedParallelMatchesSequential() {
+        JSONObject spec = new JSONObject("""
+                {
+                  "seed"   : 7,
+                  "rules"  : { "F" : ["F[+F]F[-F]F", "F[+F]F", "F[-F]F"] },
+                  "axiom"  : "F",
+                  "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+                  "parameters" : { "step":2, "angle":25.7, "start":[0,0,90] }
+                }""");
+
+        RecordingTurtle sequential = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        LSystem sys = new LSystem();
+        sys.setCounterBased(true);
+        sys.initFromJson(spec, sequential);
+        Rectangle2D expectedBox = sys.tell(sequential, sys.getAxiom(), 7);
+
+        RecordingTurtle parallel = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        LSystem other = new LSystem();
+        other.setCounterBased(true);
+        other.setParallel(true);
+        other.initFromJson(spec, parallel);
+        Rectangle2D box = other.tell(parallel, other.getAxiom(), 7);
+
+        SegmentBuffer expected = sequential.segments(), actual = parallel.segments();
+        assertTrue(expected.size() > BranchTask.MIN_FORK_WORK);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.x1(i), actual.x1(i), "x1 " + i);
+            assertEquals(expected.y1(i), actual.y1(i), "y1 " + i);
+        }
+        assertEquals(expectedBox, box);
+
+        // le générateur séquentiel reste reproductible après resetRnd
+        int[] draws = new int[8];
+        for (int i = 0; i < draws.length; ++i)
+            draws[i] = sys.rndInt(10);
+        sys.resetRnd();
+        for (int draw : draws)
+            assertEquals(draw, sys.rndInt(10));
+    }
+
+    @Test
+    @DisplayName("setFused : suites de terminaux posées d'un bloc, même tracé à l'arrondi près")
+    void fusedMatchesStepByStep() {
+        JSONObject spec = new JSONObject(BUISSON);
+        for (boolean parallel : new boolean[] { false, true }) {
+            RecordingTurtle plain = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+            LSystem sys = new LSystem();
+            sys.setParallel(parallel);
+            sys.initFromJson(spec, plain);
+            Rectangle2D expectedBox = sys.tell(plain, sys.getAxiom(), 6);
+
+            RecordingTurtle fused = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+            fused.setFused(true);
+            LSystem other = new LSystem();
+            other.setParallel(parallel);
+            other.initFromJson(spec, fused);
+            Rectangle2D box = other.tell(fused, other.getAxiom(), 6);
+
+            SegmentBuffer expected = plain.segments(), actual = fused.segments();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); ++i) {
+                assertEquals(expected.pen(i), actual.pen(i));
+                assertEquals(expected.x0(i), actual.x0(i), 1e-9, "x0 " + i);
+                assertEquals(expected.y0(i), actual.y0(i), 1e-9, "y0 " + i);
+                assertEquals(expected.x1(i), actual.x1(i), 1e-9, "x1 " + i);
+                assertEquals(expected.y1(i), actual.y1(i), 1e-9, "y1 " + i);
+            }
+            assertEquals(expectedBox.getMinX(), box.getMinX(), 1e-9);
+            assertEquals(expectedBox.getMaxX(), box.getMaxX(), 1e-9);
+            assertEquals(expectedBox.getMaxY(), box.getMaxY(), 1e-9);
+            assertEquals(plain.getPosition().distance(fused.getPosition()), 0, 1e-9);
+            assertEquals(plain.getAngle(), fused.getAngle(), 1e-9);
+        }
+    }
+
+    @Test
+    @DisplayName("MacroOps : segments locaux, déplacement net ; pop d'un état extérieur non fusionné")
+    void macroOps() {
+        LSystem sys = new LSystem();
+        RecordingTurtle turtle = new RecordingTurtle(new Point2D.Double(0, 0), 0);
+        sys.initFromJson(new JSONObject("""
+                {
+                  "rules"  : { "X" : ["F+F[-F]F", "F]F+F"] },
+                  "axiom"  : "X",
+                  "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+                  "parameters" : { "step":1, "angle":90, "start":[0,0,0] }
+                }"""), turtle);
+        Grammar g = sys.grammar();
+        Heading heading = new Heading(0, 1, 90);
+        MacroOps ops = MacroOps.of(g, heading);
+        assertSame(ops, MacroOps.of(g, new Heading(0, 1, 90)), "une seule table par géométrie");
+
+        int x = sys.getAxiom().next().ordinal, a = g.altStart[x];
+        MacroOps.Macro m = ops.macro(g.rhsStart[a], g.rhsStart[a + 1], 0);
+        assertEquals(4, m.local.size());
+        assertEquals(1, m.dx, 1e-12); // F, +, F [-F] F : (1,0) puis (0,1) deux fois
+        assertEquals(2, m.dy, 1e-12);
+        assertEquals(1, m.turns);
+        assertArrayEquals(new double[] { 1, 0, 2, 2 }, m.visited, 1e-12); // -F va en (2, 1)
+        assertNull(ops.macro(g.rhsStart[a + 1], g.rhsStart[a + 2], 0), "pop sans push dans la suite");
+
+        MacroOps.Macro turned = ops.macro(g.rhsStart[a], g.rhsStart[a + 1], 1); // départ à 90°
+        assertEquals(-2, turned.dx, 1e-12);
+        assertEquals(1, turned.dy, 1e-12);
+    }
+
+    @Test
+    @DisplayName("InstanceCache : sous-arbres répétés posés depuis le cache, mémoire bornée")
+    void instanceCache() {
+        JSONObject spec = new JSONObject(BUISSON);
+        RecordingTurtle plain = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        LSystem sys = new LSystem();
+        sys.initFromJson(spec, plain);
+        sys.tell(plain, sys.getAxiom(), 5);
+
+        for (long budget : new long[] { InstanceCache.BUDGET, 40_000 }) {
+            RecordingTurtle fused = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+            fused.setFused(true);
+            LSystem other = new LSystem();
+            other.initFromJson(spec, fused);
+            Grammar g = other.executionGrammar();
+            InstanceCache cache = new InstanceCache(g, budget);
+            g.instances = cache;
+            for (int pass = 0; pass < 2; ++pass) { // la deuxième part d'un cache plein
+                fused.segments().clear();
+                fused.init(new Point2D.Double(0, 0), 90);
+                other.tell(fused, other.getAxiom(), 5);
+
+                SegmentBuffer expected = plain.segments(), actual = fused.segments();
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); ++i) {
+                    assertEquals(expected.x1(i), actual.x1(i), 1e-9, "x1 " + i);
+                    assertEquals(expected.y1(i), actual.y1(i), 1e-9, "y1 " + i);
+                }
+                assertEquals(plain.getAngle(), fused.getAngle(), 1e-9);
+                assertTrue(cache.bytes() <= budget);
+            }
+            int f = other.getAxiom().next().ordinal;
+            if (budget == InstanceCache.BUDGET) // sinon : évincé ou non selon l'ordre de passage
+                assertTrue(cache.contains(fused.macros(g), f, 2, fused.headingIndex()), "F à la profondeur 2");
+        }
+    }
+
+    @Test
+    @DisplayName("SegmentStore : tracé écrit sur disque, relu projeté, même rejeu ; autre version ignorée")
+    void segmentStore(@TempDir Path dir) throws IOException {
+        JSONObject spec = new JSONObject(BUISSON);
+        RecordingTurtle recorder = new RecordingTurtle(new Point2D.Double(0, 0), 90);
+        LSystem sys = new LSystem();
+        sys.initFromJson(spec, recorder);
+        recorder.move(); // un déplacement aussi
+        Rectangle2D box = sys.tell(recorder, sys.getAxiom(), 4);
+        SegmentBuffer segments = recorder.segments();
+
+        SegmentStore store = new SegmentStore(dir.resolve("cache"));
+        String key = SegmentStore.key(spec, 4, 0);
+        assertNull(store.get(key));
+        store.put(key, segments, box);
+        SegmentStore.Segments mapped = new SegmentStore(dir.resolve("cache")).get(key); // autre instance
+        assertNotNull(mapped);
+        assertEquals(box, mapped.bounds());
+        assertEquals(segments.getBounds(), mapped.getBounds());
+        assertEquals(segments.size(), mapped.size());
+        assertFalse(mapped.pen(0));
+        for (int i = 0; i < segments.size(); ++i) {
+            assertEquals(segments.x0(i), mapped.x0(i));
+            assertEquals(segments.y0(i), mapped.y0(i));
+            assertEquals(segments.x1(i), mapped.x1(i));
+            assertEquals(segments.y1(i), mapped.y1(i));
+            assertEquals(segments.pen(i), mapped.pen(i));
+        }
+
+        assertEquals(postScript(segments), postScript(mapped));
+
+        store.put(key, new SegmentBuffer(), null); // remplacé d'un coup ; la projection garde l'ancien
+        assertEquals(segments.size(), mapped.size());
+        assertEquals(segments.x1(7), mapped.x1(7));
+        SegmentStore.Segments empty = store.get(key);
+        assertEquals(0, empty.size());
+        assertNull(empty.bounds());
+        assertNull(empty.getBounds());
+        try (var files = Files.list(dir.resolve("cache"))) {
+            assertEquals(1, files.count(), "pas de fichier temporaire restant");
+        }
+
+        byte[] bytes = Files.readAllBytes(store.path(key));
+        bytes[4] = (byte) (SegmentStore.VERSION + 1);
+        Files.write(store.path(key), bytes);
+        assertNull(store.get(key), "autre version : ignoré");
+        Files.write(store.path(key), Arrays.copyOf(bytes, 20));
+        assertNull(store.get(key), "tronqué : ignoré");
+        assertThrows(IllegalArgumentException.class, () -> store.path("../x"));
+    }
+
+    @Test
+    @DisplayName("SegmentStore : tracé gardé seulement s'il se reproduit ; herbe sans graine, deux fois, rien d'écrit")
+    void segmentStoreReproducible(@TempDir Path dir) throws IOException {
+        SegmentStore store = new SegmentStore(dir);
+        String herbe = """
+                {
+                  "rules"  : { "F" : ["F[+F]F[-F]F", "F[+F]F", "F[-F]F"] },
+                  "axiom"  : "F",
+                  "actions": { "F":"draw", "[":"push", "]":"pop", "+":"turnL", "-":"turnR" },
+                  "parameters" : { "step":2, "angle":25.7, "start":[0,0,90] }
+                }""";
+        for (int run = 0; run < 2; ++run)
+            render(new JSONObject(herbe), 4, store);
+        assertEquals(0, store.bytes(), "graine tirée au hasard : ni lu ni écrit");
+
+        JSONObject seeded = new JSONObject(herbe).put("seed", 7);
+        String first = render(seeded, 4, store);
+        assertEquals(first, render(seeded, 4, store), "deuxième lancement : rejoué depuis le disque");
+        render(new JSONObject(BUISSON), 3, store); // déterministe : sans graine
+        try (var files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    @DisplayName("SegmentStore : répertoire borné, les moins récemment lus supprimés")
+    void segmentStoreLimit(@TempDir Path dir) throws IOException {
+        SegmentBuffer segments = new SegmentBuffer();
+        for (int i = 0; i < 100; ++i)
+            segments.add(i, 0, i + 1, 0, true);
+        SegmentStore unbounded = new SegmentStore(dir.resolve("sizes"));
+        unbounded.put("a", segments, null);
+        long one = unbounded.bytes();
+
+        SegmentStore store = new SegmentStore(dir.resolve("store"), 2 * one);
+        Path stale = dir.resolve("store").resolve("x.123.tmp");
+        Files.write(stale, new byte[10]);
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+        assertTrue(store.put("a", segments, null));
+        Files.setLastModifiedTime(store.path("a"), FileTime.from(Instant.now().minusSeconds(20)));
+        assertTrue(store.put("b", segments, null));
+        Files.setLastModifiedTime(store.path("b"), FileTime.from(Instant.now().minusSeconds(10)));
+        assertNotNull(store.get("a")); // lu : de nouveau récent
+        assertTrue(store.put("c", segments, null));
+
+        assertEquals(2 * one, store.bytes());
+        assertTrue(store.contains("a"));
+        assertFalse(store.contains("b"), "le moins récemment lu, supprimé");
+        assertTrue(store.contains("c"));
+        assertFalse(Files.exists(stale), "fichier temporaire abandonné, supprimé");
+
+        SegmentStore tiny = new SegmentStore(dir.resolve("tiny"), one - 1);
+        assertFalse(tiny.put("a", segments, null), "plus gros que le répertoire : pas écrit");
+        assertEquals(0, tiny.bytes());
+
+        SegmentSource huge = new SegmentSource() { // rien à lire : refusé sur sa taille
+            public int size() { return SegmentStore.MAX_SEGMENTS + 1; }
+            public double x0(int i) { return 0; }
+            public double y0(int i) { return 0; }
+            public double x1(int i) { return 0; }
+            public double y1(int i) { return 0; }
+            public boolean pen(int i) { return true; }
+            public Rectangle2D getBounds() { return null; }
+            public void replay(SegmentSink sink, int from, int to) { }
+        };
+        SegmentStore large = new SegmentStore(dir.resolve("large"), Long.MAX_VALUE);
+        assertFalse(large.put("a", huge, null), "trop de segments pour un fichier projeté : pas écrit");
+        assertFalse(large.contains("a"));
+        assertEquals(0, large.bytes());
+    }
+
+    /** Fichier EPS de Main, avec le répertoire de tracés. */
+    private static String render(JSONObject spec, int n, SegmentStore store) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (EpsWriter out = new EpsWriter(bytes)) {
+            Main.render(spec, "test", n, store, out);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String postScript(SegmentSource segments) {
+        StringWriter text = new StringWriter();
+        EpsWriter out = new EpsWriter(text);
+        PostScriptTurtle turtle = new PostScriptTurtle(new Point2D.Double(0, 0), 90, out);
+        turtle.replay(segments);
+        turtle.flush();
+        out.flush();
+        return text.toString();
+    }
+}
@@ -99,6 +99,25 @@ public class TurtleImpTest {
         assertEquals(-90, turtle.getAngle(), 1e-9);
     }
 
+    @Test
+    @DisplayName("angle unitaire divisant 360 : vecteurs tabulés, aucune dérive")
+    void testHeadingTableNoDrift() {
+        turtle.setUnits(1, 22.5);
+        for (int i = 0; i < 16 * 1000; ++i)
+            turtle.turnL(); // 1000 tours complets
+        assertEquals(16 * 1000 * 22.5, turtle.getAngle(), 0.0);
+
+        turtle.move();
+        assertEquals(1.0, turtle.getX(), 0.0); // exactement le vecteur de 0°
+        assertEquals(0.0, turtle.getY(), 0.0);
+
+        turtle.turnR();
+        turtle.push();
+        turtle.turnL();
+        turtle.pop();
+        assertEquals(16 * 1000 * 22.5 - 22.5, turtle.getAngle(), 0.0);
+    }
+
     // --------------------------------------------------------------------- //
     // Pile push/pop //
     // --------------------------------------------------------------------- //
@@ -122,6 +141,23 @@ public class TurtleImpTest {
             assertEquals(90, turtle.getAngle(), 1e-9);
         }
 
+        @Test
+        @DisplayName("pile profonde (croissance du tableau), getX()/getY() primitifs")
+        void testDeepStack() {
+            for (int i = 0; i < 100; ++i) {
+                turtle.push();
+                turtle.move();
+                turtle.turnL();
+            }
+            for (int i = 99; i >= 0; --i) {
+                turtle.pop();
+                assertEquals(turtle.getPosition().getX(), turtle.getX(), 0.0);
+                assertEquals(turtle.getPosition().getY(), turtle.getY(), 0.0);
+            }
+            assertPosition(new Point2D.Double(0, 0), turtle.getPosition());
+            assertEquals(0, turtle.getAngle(), 1e-9);
+        }
+
         @Test
         void testPopOnEmptyStackDoesNotCrash() {
             Point2D before = turtle.getPosition();
@@ -146,4 +182,68 @@ public class TurtleImpTest {
         assertEquals(17.5, turtle.getUnitAngle(), 1e-9);
     }
 
-}
\ No newline at end of file
+    // --------------------------------------------------------------------- //
+    // Exécution en bloc //
+    // --------------------------------------------------------------------- //
+
+    @Test
+    @DisplayName("execute() en bloc ≡ appels un à un ≡ boucle par défaut, bounding-box compris")
+    void testExecuteBulk() {
+        byte[] ops = { TurtleOp.DRAW, TurtleOp.PUSH, TurtleOp.TURN_L, TurtleOp.DRAW, TurtleOp.DRAW,
+                TurtleOp.POP, TurtleOp.NONE, TurtleOp.TURN_R, TurtleOp.MOVE, TurtleOp.STAY, TurtleOp.DRAW };
+        FakeTurtle single = new FakeTurtle(new Point2D.Double(0, 0), 0);
+        for (byte op : ops)
+            TurtleOp.apply(single, op);
+
+        double[] box = { 0, 0, 0, 0 };
+        turtle.execute(ops, 0, ops.length, box);
+        assertPosition(single.getPosition(), turtle.getPosition());
+        assertEquals(single.getAngle(), turtle.getAngle(), 1e-9);
+        assertArrayEquals(new double[] { 0, -2, 1, 2 }, box, 1e-9);
+
+        FakeTurtle plain = new FakeTurtle(new Point2D.Double(0, 0), 0);
+        double[] defaultBox = { 0, 0, 0, 0 };
+        new Turtle() { // enveloppe sans redéfinition de execute() : boucle par défaut
+            public void draw() { plain.draw(); }
+            public void move() { plain.move(); }
+            public void turnR() { plain.turnR(); }
+            public void turnL() { plain.turnL(); }
+            public void push() { plain.push(); }
+            public void pop() { plain.pop(); }
+            public void init(Point2D pos, double angle) { plain.init(pos, angle); }
+            public Point2D getPosition() { return plain.getPosition(); }
+            public double getAngle() { return plain.getAngle(); }
+            public void setUnits(double step, double delta) { plain.setUnits(step, delta); }
+            public double getUnitStep() { return plain.getUnitStep(); }
+            public double getUnitAngle() { return plain.getUnitAngle(); }
+        }.execute(ops, 0, ops.length, defaultBox);
+        assertPosition(single.getPosition(), plain.getPosition());
+        assertArrayEquals(box, defaultBox, 1e-9);
+    }
+
+    @Test
+    @DisplayName("action() : Runnable généré une fois par (classe, nom), sans réflexion")
+    void testActionByName() {
+        Runnable draw = turtle.action("draw");
+        turtle.action("turnL").run();
+        draw.run();
+        assertPosition(new Point2D.Double(0, 1), turtle.getPosition());
+        turtle.action("getPosition").run(); // valeur de retour ignorée
+
+        FakeTurtle other = new FakeTurtle(new Point2D.Double(0, 0), 0);
+        assertSame(draw.getClass(), other.action("draw").getClass(), "même classe générée");
+        assertTrue(draw.getClass().isHidden(), "classe LambdaMetafactory");
+
+        FakeTurtle anonymous = new FakeTurtle(new Point2D.Double(0, 0), 0) {
+            @Override
+            public void draw() {
+                move();
+                move();
+            }
+        };
+        anonymous.action("draw").run();
+        assertPosition(new Point2D.Double(2, 0), anonymous.getPosition());
+
+        assertThrows(IllegalArgumentException.class, () -> turtle.action("fly"));
+    }
+}